@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.shared.WeatherConditions;
+
+import java.util.Locale;
+
+/*
+    Checks that the condition lookups, now a table indexed by id, give what the range chains
+    they replaced gave, for every id the table holds and a few on either side of it.  The old
+    chains are kept below, as they were, to compare against.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    private static final int FIRST_ID = -10;
+    private static final int LAST_ID = WeatherConditions.MAX_ID + 10;
+
+    public void testIconResources() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Error: wrong icon for " + id,
+                    legacyIconResource(id), Utility.getIconResourceForWeatherCondition(id));
+        }
+    }
+
+    public void testArtResources() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Error: wrong art for " + id,
+                    legacyArtResource(id), Utility.getArtResourceForWeatherCondition(id));
+        }
+    }
+
+    public void testArtUrls() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String formatArtUrl = prefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                mContext.getString(R.string.pref_art_pack_sunshine));
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            String artName = legacyArtName(id);
+            String expected = artName != null
+                    ? String.format(Locale.US, formatArtUrl, artName) : null;
+            assertEquals("Error: wrong art URL for " + id,
+                    expected, Utility.getArtUrlForWeatherCondition(mContext, id));
+        }
+    }
+
+    public void testImageUrls() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Error: wrong image URL for " + id,
+                    legacyImageUrl(id), Utility.getImageUrlForWeatherCondition(id));
+        }
+    }
+
+    public void testStrings() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            int stringId = legacyStringResource(id);
+            String expected = stringId != 0 ? mContext.getString(stringId)
+                    : mContext.getString(R.string.condition_unknown, id);
+            assertEquals("Error: wrong description for " + id,
+                    expected, Utility.getStringForWeatherCondition(mContext, id));
+        }
+    }
+
+    private static int legacyIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtName(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+
+    // The switch the descriptions came from, as a resource id, 0 for "unknown"
+    private static int legacyStringResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500: return R.string.condition_500;
+            case 501: return R.string.condition_501;
+            case 502: return R.string.condition_502;
+            case 503: return R.string.condition_503;
+            case 504: return R.string.condition_504;
+            case 511: return R.string.condition_511;
+            case 520: return R.string.condition_520;
+            case 531: return R.string.condition_531;
+            case 600: return R.string.condition_600;
+            case 601: return R.string.condition_601;
+            case 602: return R.string.condition_602;
+            case 611: return R.string.condition_611;
+            case 612: return R.string.condition_612;
+            case 615: return R.string.condition_615;
+            case 616: return R.string.condition_616;
+            case 620: return R.string.condition_620;
+            case 621: return R.string.condition_621;
+            case 622: return R.string.condition_622;
+            case 701: return R.string.condition_701;
+            case 711: return R.string.condition_711;
+            case 721: return R.string.condition_721;
+            case 731: return R.string.condition_731;
+            case 741: return R.string.condition_741;
+            case 751: return R.string.condition_751;
+            case 761: return R.string.condition_761;
+            case 762: return R.string.condition_762;
+            case 771: return R.string.condition_771;
+            case 781: return R.string.condition_781;
+            case 800: return R.string.condition_800;
+            case 801: return R.string.condition_801;
+            case 802: return R.string.condition_802;
+            case 803: return R.string.condition_803;
+            case 804: return R.string.condition_804;
+            case 900: return R.string.condition_900;
+            case 901: return R.string.condition_901;
+            case 902: return R.string.condition_902;
+            case 903: return R.string.condition_903;
+            case 904: return R.string.condition_904;
+            case 905: return R.string.condition_905;
+            case 906: return R.string.condition_906;
+            case 951: return R.string.condition_951;
+            case 952: return R.string.condition_952;
+            case 953: return R.string.condition_953;
+            case 954: return R.string.condition_954;
+            case 955: return R.string.condition_955;
+            case 956: return R.string.condition_956;
+            case 957: return R.string.condition_957;
+            case 958: return R.string.condition_958;
+            case 959: return R.string.condition_959;
+            case 960: return R.string.condition_960;
+            case 961: return R.string.condition_961;
+            case 962: return R.string.condition_962;
+            default: return 0;
+        }
+    }
+}
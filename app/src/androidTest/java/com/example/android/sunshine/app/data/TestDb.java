@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
@@ -105,6 +106,21 @@ public class TestDb extends AndroidTestCase {
         db.close();
     }
 
+    /*
+        synchronous = NORMAL is only safe with write-ahead logging; with a rollback journal a
+        power cut could corrupt the file, so there it must stay FULL.
+     */
+    public void testSynchronousMatchesJournalMode() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String journalMode = DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null);
+        long synchronous = DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null);
+        // 1 is NORMAL, 2 is FULL
+        assertEquals("Error: wrong synchronous setting for journal mode " + journalMode,
+                "wal".equalsIgnoreCase(journalMode) ? 1 : 2, synchronous);
+        dbHelper.close();
+    }
+
     /*
         Students:  Here is where you will build code to test that we can insert and query the
         location database.  We've done a lot of work for you.  You'll want to look in TestUtilities
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Measures how long a forecast read through the provider takes on its own, and while another
+    thread is bulk inserting a large forecast.  The numbers are written to the log under this
+    class' tag.
+ */
+public class TestDbConcurrency extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbConcurrency.class.getSimpleName();
+
+    private static final int BULK_INSERT_DAYS = 3000;
+    private static final int BASELINE_READS = 50;
+
+    private Uri mReadUri;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mLocationRowId));
+
+        mReadUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private long timeRead() {
+        long start = System.nanoTime();
+        Cursor cursor = mContext.getContentResolver().query(mReadUri, null, null, null, null);
+        // The query only runs once the cursor is filled.
+        assertTrue(cursor.moveToFirst());
+        cursor.close();
+        return System.nanoTime() - start;
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percent / 100));
+    }
+
+    private static String describe(List<Long> nanos) {
+        Collections.sort(nanos);
+        return String.format(Locale.US, "%d reads, p50 %d us, p95 %d us, max %d us",
+                nanos.size(), percentile(nanos, 50) / 1000, percentile(nanos, 95) / 1000,
+                nanos.get(nanos.size() - 1) / 1000);
+    }
+
+    public void testReadLatencyDuringBulkInsert() throws Throwable {
+        List<Long> baseline = new ArrayList<Long>();
+        for (int i = 0; i < BASELINE_READS; i++) {
+            baseline.add(timeRead());
+        }
+
+        final ContentValues[] forecast = new ContentValues[BULK_INSERT_DAYS];
+        for (int i = 0; i < BULK_INSERT_DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + (i + 1) * 86400000L);
+            forecast[i] = weatherValues;
+        }
+
+        final long[] writerNanos = new long[1];
+        final Throwable[] writerError = new Throwable[1];
+        Thread writer = new Thread("bulkInsert") {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+                } catch (Throwable t) {
+                    writerError[0] = t;
+                }
+                writerNanos[0] = System.nanoTime() - start;
+            }
+        };
+
+        // Only count reads that both started and finished while the writer was running.
+        List<Long> duringWrite = new ArrayList<Long>();
+        writer.start();
+        while (writer.isAlive()) {
+            long nanos = timeRead();
+            if (writer.isAlive()) {
+                duringWrite.add(nanos);
+            }
+        }
+        writer.join();
+        if (writerError[0] != null) {
+            throw writerError[0];
+        }
+
+        Log.i(LOG_TAG, String.format(Locale.US, "bulkInsert of %d days took %d ms",
+                BULK_INSERT_DAYS, writerNanos[0] / 1000000));
+        Log.i(LOG_TAG, "Idle:   " + describe(baseline));
+        if (duringWrite.isEmpty()) {
+            Log.i(LOG_TAG, "During: no read finished before the bulkInsert did");
+        } else {
+            Log.i(LOG_TAG, "During: " + describe(duringWrite));
+        }
+
+        // With write-ahead logging, readers don't wait for the sync's transaction to commit.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            assertFalse("Error: every read waited for the bulkInsert to finish",
+                    duringWrite.isEmpty());
+        }
+    }
+}
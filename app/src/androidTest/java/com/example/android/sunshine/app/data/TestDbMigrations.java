@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Builds weather.db the way each earlier version of the app left it, opens it with the current
+    WeatherDbHelper, and checks what survived.  The old schemas are written out here by hand on
+    purpose: they must not change when WeatherDbHelper does.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    private static final int DAYS = 14;
+
+    // Version 2, the first schema with integer dates
+    private static final String[] SCHEMA_V2 = {
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, " +
+                    "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );",
+            "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT,location_id INTEGER NOT NULL, " +
+                    "date INTEGER NOT NULL, short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+                    "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                    "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL,  " +
+                    "FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+                    "UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+
+    void deleteTheDatabase() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteTheDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTheDatabase();
+        super.tearDown();
+    }
+
+    private SQLiteDatabase createDatabase(int version, String[] schema) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        for (String statement : schema) {
+            db.execSQL(statement);
+        }
+        db.setVersion(version);
+        return db;
+    }
+
+    private void insertForecast(SQLiteDatabase db) {
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(locationRowId != -1);
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i);
+            assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        }
+    }
+
+    private SQLiteDatabase upgrade() {
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Log.i(LOG_TAG, "Opened and upgraded in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        return db;
+    }
+
+    private static void assertHasIndex(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND " +
+                "name = ?", new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE});
+        assertTrue("Error: the (location_id, date) index is missing after the upgrade",
+                cursor.moveToFirst());
+        cursor.close();
+    }
+
+    public void testMigrationsAreContiguous() {
+        int expected = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+        for (WeatherDbHelper.Migration migration : WeatherDbHelper.MIGRATIONS) {
+            assertEquals("Error: migrations are out of order or have a gap",
+                    expected, migration.mFromVersion);
+            expected++;
+        }
+        assertEquals("Error: no migration to the current version",
+                WeatherDbHelper.DATABASE_VERSION, expected);
+    }
+
+    public void testUpgradeFromVersion1Rebuilds() {
+        // Nothing to convert from, but the app has to come up with a working schema.
+        SQLiteDatabase old = createDatabase(1, new String[]{
+                "CREATE TABLE weather (_id INTEGER PRIMARY KEY, date TEXT NOT NULL);"});
+        old.execSQL("INSERT INTO weather (date) VALUES ('20141220')");
+        old.close();
+
+        SQLiteDatabase db = upgrade();
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+        assertHasIndex(db);
+        db.close();
+    }
+
+    public void testUpgradeFromVersion2KeepsForecast() {
+        SQLiteDatabase old = createDatabase(2, SCHEMA_V2);
+        insertForecast(old);
+        old.close();
+
+        SQLiteDatabase db = upgrade();
+        assertEquals("Error: the upgrade lost the cached forecast",
+                DAYS, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+        assertHasIndex(db);
+
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        ContentValues expected = TestUtilities.createWeatherValues(1);
+        TestUtilities.validateCurrentRecord("Error: a migrated row changed", cursor, expected);
+        cursor.close();
+        db.close();
+    }
+
+    public void testOpenAtCurrentVersionKeepsForecast() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        insertForecast(db);
+        db.close();
+
+        db = upgrade();
+        assertEquals(DAYS, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        db.close();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+
+public class TestLocationIdCache extends AndroidTestCase {
+
+    private LocationIdCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mCache = LocationIdCache.getInstance(mContext);
+        mCache.invalidate();
+    }
+
+    private long insertLocation() {
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        return ContentUris.parseId(uri);
+    }
+
+    public void testCounters() {
+        long misses = mCache.getMissCount();
+        long hits = mCache.getHitCount();
+        assertEquals(-1, mCache.get("nowhere"));
+        assertEquals(misses + 1, mCache.getMissCount());
+
+        mCache.put("somewhere", 7);
+        assertEquals(7, mCache.get("somewhere"));
+        assertEquals(hits + 1, mCache.getHitCount());
+    }
+
+    public void testRolledBackInsertIsNotCached() throws Exception {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        // Fails, so the whole batch, location and all, rolls back.
+        operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                .withExpectedCount(2)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                    operations);
+            fail("Error: the batch should have failed");
+        } catch (OperationApplicationException expected) {
+        }
+        assertEquals("Error: a rolled back location was cached",
+                -1, mCache.get(TestUtilities.TEST_LOCATION));
+    }
+
+    public void testProviderDeleteInvalidates() {
+        long id = insertLocation();
+        mCache.put(TestUtilities.TEST_LOCATION, id);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        assertEquals(-1, mCache.get(TestUtilities.TEST_LOCATION));
+    }
+
+    public void testProviderUpdateInvalidates() {
+        long id = insertLocation();
+        mCache.put(TestUtilities.TEST_LOCATION, id);
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, "99706");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(id)});
+        assertEquals(-1, mCache.get(TestUtilities.TEST_LOCATION));
+    }
+
+    public void testNotifyChangeInvalidates() throws InterruptedException {
+        mCache.put(TestUtilities.TEST_LOCATION, 42);
+        mContext.getContentResolver().notifyChange(LocationEntry.CONTENT_URI, null);
+
+        // The observer hears about it on a binder thread.
+        long deadline = SystemClock.elapsedRealtime() + 5000;
+        while (mCache.get(TestUtilities.TEST_LOCATION) != -1) {
+            assertTrue("Error: notifyChange did not clear the cache",
+                    SystemClock.elapsedRealtime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs EXPLAIN QUERY PLAN over every statement shape WeatherProvider and the sync run against
+    the database, and fails if any of them has to scan a whole table.  If you add a query to the
+    provider, add its shape here too.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    private static final String SORT_BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    private void assertNoTableScan(String sql, String... args) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        int detailColumn = cursor.getColumnIndex("detail");
+        assertTrue("Error: EXPLAIN QUERY PLAN returned nothing for " + sql, cursor.moveToFirst());
+        do {
+            String detail = cursor.getString(detailColumn);
+            Log.d(LOG_TAG, detail + "  <-  " + sql);
+            // "SCAN TABLE weather" on older SQLite, "SCAN weather" on newer ones.  Lookups show up
+            // as "SEARCH ...", and sorting as "USE TEMP B-TREE ...".
+            assertFalse("Error: full scan (" + detail + ") in " + sql,
+                    detail.startsWith("SCAN ") && !detail.startsWith("SCAN CONSTANT ROW"));
+        } while (cursor.moveToNext());
+        cursor.close();
+    }
+
+    private String buildJoinQuery(String selection) {
+        return WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                null, selection, null, null, SORT_BY_DATE, null);
+    }
+
+    public void testIndexExists() {
+        Cursor cursor = mDb.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND " +
+                "name = ?", new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE});
+        assertTrue("Error: the (location_id, date) index was not created", cursor.moveToFirst());
+        cursor.close();
+    }
+
+    // content://.../weather/94043
+    public void testWeatherWithLocation() {
+        assertNoTableScan(buildJoinQuery(WeatherProvider.sLocationSettingSelection), "94043");
+    }
+
+    // content://.../weather/94043?date=...
+    public void testWeatherWithLocationAndStartDate() {
+        assertNoTableScan(buildJoinQuery(WeatherProvider.sLocationSettingWithStartDateSelection),
+                "94043", Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // content://.../weather/94043/<date>
+    public void testWeatherWithLocationAndDate() {
+        assertNoTableScan(buildJoinQuery(WeatherProvider.sLocationSettingAndDaySelection),
+                "94043", Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // The sync looks its location up by setting before storing a forecast.
+    public void testLocationBySetting() {
+        assertNoTableScan("SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?", "94043");
+    }
+
+    // WeatherUpserter finds the stored row for each day it writes.
+    public void testWeatherByLocationIdAndDate() {
+        assertNoTableScan("SELECT " + WeatherEntry._ID + " FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " = ?", "1", Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // The sync deletes the days before yesterday.
+    public void testDeleteOldWeather() {
+        assertNoTableScan("DELETE FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                WeatherEntry.COLUMN_DATE + " <= ?", Long.toString(TestUtilities.TEST_DATE));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Runs against an in-memory database with the real schema, so nothing here touches the
+    provider's database file.  The benchmark numbers are written to the log under this class'
+    tag.
+ */
+public class TestWeatherUpserter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherUpserter.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_SYNCS = 200;
+
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+        mLocationRowId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(mLocationRowId != -1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    static ContentValues[] createForecast(long locationRowId, double temperatureShift) {
+        ContentValues[] forecast = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(TestUtilities.TEST_DATE + i * 86400000L));
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i + temperatureShift);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i + temperatureShift);
+            forecast[i] = weatherValues;
+        }
+        return forecast;
+    }
+
+    private WeatherUpserter upsertAll(ContentValues[] forecast) {
+        WeatherUpserter upserter = new WeatherUpserter(mDb);
+        mDb.beginTransaction();
+        try {
+            for (ContentValues weatherValues : forecast) {
+                assertTrue(upserter.upsert(weatherValues) != -1);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            upserter.close();
+        }
+        return upserter;
+    }
+
+    private void insertAll(ContentValues[] forecast) {
+        mDb.beginTransaction();
+        try {
+            for (ContentValues weatherValues : forecast) {
+                mDb.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private long sumOfRowIds() {
+        Cursor cursor = mDb.rawQuery("SELECT SUM(" + WeatherEntry._ID + "), COUNT(*) FROM " +
+                WeatherEntry.TABLE_NAME, null);
+        assertTrue(cursor.moveToFirst());
+        long sum = cursor.getLong(0);
+        assertEquals(DAYS, cursor.getInt(1));
+        cursor.close();
+        return sum;
+    }
+
+    public void testCounts() {
+        WeatherUpserter first = upsertAll(createForecast(mLocationRowId, 0));
+        assertEquals(DAYS, first.getInserted());
+        assertEquals(0, first.getUpdated());
+        assertEquals(0, first.getUnchanged());
+        assertTrue(first.hasChanges());
+        long rowIds = sumOfRowIds();
+
+        WeatherUpserter same = upsertAll(createForecast(mLocationRowId, 0));
+        assertEquals(0, same.getInserted());
+        assertEquals(0, same.getUpdated());
+        assertEquals(DAYS, same.getUnchanged());
+        assertFalse(same.hasChanges());
+
+        ContentValues[] changed = createForecast(mLocationRowId, 0);
+        changed[3].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        changed[7].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        WeatherUpserter someChanged = upsertAll(changed);
+        assertEquals(0, someChanged.getInserted());
+        assertEquals(2, someChanged.getUpdated());
+        assertEquals(DAYS - 2, someChanged.getUnchanged());
+
+        assertEquals("Error: rows were replaced instead of updated in place",
+                rowIds, sumOfRowIds());
+
+        Cursor cursor = mDb.query(WeatherEntry.TABLE_NAME, null, null, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToPosition(3));
+        TestUtilities.validateCurrentRecord("Error: updated day not stored", cursor, changed[3]);
+        cursor.close();
+    }
+
+    public void testBenchmark() {
+        // Every benchmark sync re-sends the same 14 days, half of them with new temperatures,
+        // the way a periodic sync usually finds the forecast.
+        ContentValues[][] syncs = new ContentValues[2][];
+        syncs[0] = createForecast(mLocationRowId, 0);
+        syncs[1] = createForecast(mLocationRowId, 0);
+        for (int i = 0; i < DAYS; i += 2) {
+            syncs[1][i].put(WeatherEntry.COLUMN_MAX_TEMP, 80.0 + i);
+        }
+
+        insertAll(syncs[0]);
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SYNCS; i++) {
+            insertAll(syncs[i % 2]);
+        }
+        long insertNanos = (System.nanoTime() - start) / BENCHMARK_SYNCS;
+
+        mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+        upsertAll(syncs[0]);
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_SYNCS; i++) {
+            upsertAll(syncs[i % 2]);
+        }
+        long upsertNanos = (System.nanoTime() - start) / BENCHMARK_SYNCS;
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d day re-sync: SQLiteDatabase.insert %d us, WeatherUpserter %d us",
+                DAYS, insertNanos / 1000, upsertNanos / 1000));
+    }
+}
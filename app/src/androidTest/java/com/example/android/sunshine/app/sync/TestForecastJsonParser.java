@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Checks that the streaming forecast parser agrees with the String/JSONObject path, and
+    compares what each of them costs on a 14 and a 16 day payload.  The benchmark numbers are
+    written to the log under this class' tag.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int WARM_UP_ITERATIONS = 20;
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    static class RecordingListener implements ForecastJsonParser.Listener {
+        String mCityName;
+        double mLat;
+        double mLon;
+        final List<ContentValues> mDays = new ArrayList<ContentValues>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mLat = lat;
+            mLon = lon;
+        }
+
+        @Override
+        public void onDay(int index, ContentValues weatherValues) {
+            assertEquals("Error: days were not handed out in order", mDays.size(), index);
+            mDays.add(weatherValues);
+        }
+    }
+
+    /*
+        Builds a response shaped like the OWM daily forecast, including the fields that
+        Sunshine doesn't read so that the parser has to skip them.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5845459,\"name\":\"North Pole\",")
+                .append("\"coord\":{\"lon\":-147.353,\"lat\":64.7488},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0115,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f," +
+                            "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d," +
+                            "\"weather\":[{\"id\":%d,\"main\":\"Clouds\"," +
+                            "\"description\":\"broken clouds\",\"icon\":\"04d\"}]," +
+                            "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    1419033600L + i * 86400L, -10.5 + i, -20.25 + i, -5.75 + i, -15.0, -12.0,
+                    -18.0, 1012.5 + i, 70 + i, 800 + (i % 5), 1.5 + i, (i * 37) % 360, 20));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    static InputStream asStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    /*
+        This is what onPerformSync did before the streaming parser: read the response line by
+        line into a StringBuffer, then build a JSONObject tree out of it.
+     */
+    static int parseWholeDocument(InputStream inputStream, ForecastJsonParser parser)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        return parser.parse(buffer.toString());
+    }
+
+    public void testStreamingMatchesDocumentParse() throws Throwable {
+        String json = createForecastJson(16);
+
+        RecordingListener streamed = new RecordingListener();
+        assertEquals(HttpURLConnection.HTTP_OK,
+                new ForecastJsonParser(streamed).parse(asStream(json)));
+
+        RecordingListener document = new RecordingListener();
+        assertEquals(HttpURLConnection.HTTP_OK, new ForecastJsonParser(document).parse(json));
+
+        assertEquals("North Pole", streamed.mCityName);
+        assertEquals(document.mCityName, streamed.mCityName);
+        assertEquals(document.mLat, streamed.mLat);
+        assertEquals(document.mLon, streamed.mLon);
+
+        assertEquals(16, streamed.mDays.size());
+        assertEquals(document.mDays.size(), streamed.mDays.size());
+        for (int i = 0; i < streamed.mDays.size(); i++) {
+            assertEquals("Error: day " + i + " differs between the two parsers",
+                    document.mDays.get(i), streamed.mDays.get(i));
+        }
+    }
+
+    public void testListBeforeCity() throws Throwable {
+        String json = "{\"list\":[{\"temp\":{\"min\":1.0,\"max\":2.0},\"pressure\":3.0," +
+                "\"humidity\":4,\"weather\":[{\"id\":500,\"main\":\"Rain\"}]," +
+                "\"speed\":5.0,\"deg\":6.0}]," +
+                "\"city\":{\"name\":\"Mountain View\",\"coord\":{\"lat\":37.4,\"lon\":-122.1}}}";
+
+        RecordingListener listener = new RecordingListener();
+        assertEquals(HttpURLConnection.HTTP_OK,
+                new ForecastJsonParser(listener).parse(asStream(json)));
+        assertEquals("Mountain View", listener.mCityName);
+        assertEquals(1, listener.mDays.size());
+    }
+
+    public void testErrorCode() throws Throwable {
+        String json = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+        RecordingListener listener = new RecordingListener();
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                new ForecastJsonParser(listener).parse(asStream(json)));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                new ForecastJsonParser(listener).parse(json));
+        assertTrue(listener.mDays.isEmpty());
+    }
+
+    public void testIncompleteDay() throws Throwable {
+        // "deg" is missing
+        String json = "{\"city\":{\"name\":\"X\",\"coord\":{\"lat\":1.0,\"lon\":2.0}}," +
+                "\"list\":[{\"temp\":{\"min\":1.0,\"max\":2.0},\"pressure\":3.0," +
+                "\"humidity\":4,\"weather\":[{\"id\":500,\"main\":\"Rain\"}],\"speed\":5.0}]}";
+        try {
+            new ForecastJsonParser(new RecordingListener()).parse(asStream(json));
+            fail("Error: an incomplete day should not be handed out");
+        } catch (JSONException expected) {
+        }
+    }
+
+    public void testBenchmark14Days() throws Throwable {
+        benchmark(14);
+    }
+
+    public void testBenchmark16Days() throws Throwable {
+        benchmark(16);
+    }
+
+    private void benchmark(int numDays) throws Throwable {
+        byte[] payload = createForecastJson(numDays).getBytes("UTF-8");
+
+        long[] document = measure(payload, false);
+        long[] streaming = measure(payload, true);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d days, %d bytes: document %d us/%d bytes per parse, " +
+                        "streaming %d us/%d bytes per parse",
+                numDays, payload.length,
+                document[0] / 1000, document[1], streaming[0] / 1000, streaming[1]));
+
+        assertTrue("Error: the streaming parser allocated more than the document parser",
+                streaming[1] <= document[1]);
+    }
+
+    /*
+        Returns the average time, in nanoseconds, and the average number of bytes allocated
+        by one parse.
+     */
+    @SuppressWarnings("deprecation")
+    private static long[] measure(byte[] payload, boolean streaming) throws Throwable {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            parseOnce(payload, streaming);
+        }
+
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            parseOnce(payload, streaming);
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        long allocated = Debug.getThreadAllocSize();
+
+        return new long[] {elapsed / BENCHMARK_ITERATIONS, allocated / BENCHMARK_ITERATIONS};
+    }
+
+    private static void parseOnce(byte[] payload, boolean streaming) throws Throwable {
+        InputStream in = new ByteArrayInputStream(payload);
+        ForecastJsonParser parser = new ForecastJsonParser(new RecordingListener());
+        if (streaming) {
+            parser.parse(in);
+        } else {
+            parseWholeDocument(in, parser);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentProviderClient;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+
+/*
+    Runs conditional requests against a local stub that behaves like a server honouring
+    If-None-Match and If-Modified-Since, both directly and through the sync's own fetch.
+ */
+public class TestForecastValidatorStore extends AndroidTestCase {
+
+    static final String TEST_LOCATION = "99705";
+    static final String ETAG = "\"forecast-1\"";
+    static final String LAST_MODIFIED = "Sat, 20 Dec 2014 00:00:00 GMT";
+    static final int DAYS = 14;
+
+    private LocalHttpServer mServer;
+    private ForecastValidatorStore mValidators;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mValidators = new ForecastValidatorStore(mContext);
+        mValidators.clear(TEST_LOCATION);
+        // A stored forecast is what makes the sync's request conditional.
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+
+        final byte[] body = TestForecastJsonParser.createForecastJson(DAYS).getBytes("UTF-8");
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response serve(LocalHttpServer.Request request) {
+                if (ETAG.equals(request.getHeader(ForecastValidatorStore.HEADER_IF_NONE_MATCH))
+                        || LAST_MODIFIED.equals(
+                        request.getHeader(ForecastValidatorStore.HEADER_IF_MODIFIED_SINCE))) {
+                    return new LocalHttpServer.Response(HttpURLConnection.HTTP_NOT_MODIFIED)
+                            .setHeader(ForecastValidatorStore.HEADER_ETAG, ETAG);
+                }
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK)
+                        .setHeader(ForecastValidatorStore.HEADER_ETAG, ETAG)
+                        .setHeader(ForecastValidatorStore.HEADER_LAST_MODIFIED, LAST_MODIFIED)
+                        .setBody(body);
+            }
+        });
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        mValidators.clear(TEST_LOCATION);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private HttpURLConnection open() throws Exception {
+        HttpURLConnection urlConnection =
+                (HttpURLConnection) mServer.getUrl("/forecast").openConnection();
+        urlConnection.setUseCaches(false);
+        return urlConnection;
+    }
+
+    public void testFirstRequestIsUnconditional() throws Throwable {
+        HttpURLConnection urlConnection = open();
+        assertFalse("Error: validators applied before any were saved",
+                mValidators.applyTo(urlConnection, TEST_LOCATION));
+        assertEquals(HttpURLConnection.HTTP_OK, urlConnection.getResponseCode());
+        urlConnection.disconnect();
+
+        LocalHttpServer.Request request = mServer.getRequests().get(0);
+        assertNull(request.getHeader(ForecastValidatorStore.HEADER_IF_NONE_MATCH));
+        assertNull(request.getHeader(ForecastValidatorStore.HEADER_IF_MODIFIED_SINCE));
+    }
+
+    public void testSavedValidatorsGiveNotModified() throws Throwable {
+        HttpURLConnection first = open();
+        assertEquals(HttpURLConnection.HTTP_OK, first.getResponseCode());
+        mValidators.save(first, TEST_LOCATION);
+        first.disconnect();
+
+        HttpURLConnection second = open();
+        assertTrue(mValidators.applyTo(second, TEST_LOCATION));
+        assertEquals("Error: the stub did not see the saved validators",
+                HttpURLConnection.HTTP_NOT_MODIFIED, second.getResponseCode());
+        second.disconnect();
+
+        LocalHttpServer.Request request = mServer.getRequests().get(1);
+        assertEquals(ETAG, request.getHeader(ForecastValidatorStore.HEADER_IF_NONE_MATCH));
+        assertEquals(LAST_MODIFIED,
+                request.getHeader(ForecastValidatorStore.HEADER_IF_MODIFIED_SINCE));
+    }
+
+    public void testValidatorsArePerLocation() throws Throwable {
+        HttpURLConnection first = open();
+        assertEquals(HttpURLConnection.HTTP_OK, first.getResponseCode());
+        mValidators.save(first, TEST_LOCATION);
+        first.disconnect();
+
+        HttpURLConnection other = open();
+        assertFalse(mValidators.applyTo(other, "94043"));
+        assertEquals(HttpURLConnection.HTTP_OK, other.getResponseCode());
+        other.disconnect();
+    }
+
+    public void testClear() throws Throwable {
+        HttpURLConnection first = open();
+        assertEquals(HttpURLConnection.HTTP_OK, first.getResponseCode());
+        mValidators.save(first, TEST_LOCATION);
+        first.disconnect();
+
+        mValidators.clear(TEST_LOCATION);
+
+        HttpURLConnection second = open();
+        assertFalse(mValidators.applyTo(second, TEST_LOCATION));
+        assertEquals(HttpURLConnection.HTTP_OK, second.getResponseCode());
+        second.disconnect();
+    }
+
+    public void testSyncSkipsNotModifiedForecast() throws Throwable {
+        SunshineSyncAdapter syncAdapter = new SunshineSyncAdapter(mContext, false);
+        syncAdapter.setForecastBaseUrl(mServer.getUrl("/forecast/daily") + "?");
+        ContentProviderClient provider = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            // Nothing stored yet: the whole forecast comes back and goes in.
+            SunshineSyncAdapter.ForecastFetch fetch = syncAdapter.fetchForecast(TEST_LOCATION);
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, fetch.mStatus);
+            assertFalse(fetch.mNotModified);
+            assertNotNull("Error: a 200 gave no forecast", fetch.mCollector);
+            assertEquals(DAYS, fetch.mCollector.mValues.size());
+            assertEquals(DAYS, syncAdapter.storeForecasts(provider,
+                    Collections.singletonList(fetch)));
+            assertNull(mServer.getRequests().get(0)
+                    .getHeader(ForecastValidatorStore.HEADER_IF_NONE_MATCH));
+
+            // The next run sends the saved validators and gets a 304, which leaves nothing to
+            // parse or store.
+            fetch = syncAdapter.fetchForecast(TEST_LOCATION);
+            LocalHttpServer.Request request = mServer.getRequests().get(1);
+            assertEquals("Error: the validators of the 200 were not saved",
+                    ETAG, request.getHeader(ForecastValidatorStore.HEADER_IF_NONE_MATCH));
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, fetch.mStatus);
+            assertTrue("Error: the 304 was not noticed", fetch.mNotModified);
+            assertNull("Error: a 304 was parsed", fetch.mCollector);
+            // Without a client, any write would throw.
+            assertEquals(0, syncAdapter.storeForecasts(null, Collections.singletonList(fetch)));
+        } finally {
+            provider.release();
+        }
+    }
+}
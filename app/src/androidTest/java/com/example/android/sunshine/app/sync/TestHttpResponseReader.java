@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPOutputStream;
+
+public class TestHttpResponseReader extends AndroidTestCase {
+
+    private LocalHttpServer mServer;
+    private String mForecastJson;
+    private byte[] mPlain;
+    private byte[] mGzipped;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mForecastJson = TestForecastJsonParser.createForecastJson(16);
+        mPlain = mForecastJson.getBytes("UTF-8");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(mPlain);
+        gzip.close();
+        mGzipped = out.toByteArray();
+
+        // Compresses only when asked to, like a real server would.
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response serve(LocalHttpServer.Request request) {
+                String acceptEncoding =
+                        request.getHeader(HttpResponseReader.HEADER_ACCEPT_ENCODING);
+                if (acceptEncoding != null &&
+                        acceptEncoding.contains(HttpResponseReader.ENCODING_GZIP)) {
+                    return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK)
+                            .setHeader("Content-Encoding", HttpResponseReader.ENCODING_GZIP)
+                            .setBody(mGzipped);
+                }
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK).setBody(mPlain);
+            }
+        });
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private HttpURLConnection connect(HttpResponseReader responseReader) throws Exception {
+        HttpURLConnection urlConnection =
+                (HttpURLConnection) mServer.getUrl("/forecast").openConnection();
+        urlConnection.setUseCaches(false);
+        if (responseReader != null) {
+            responseReader.prepare(urlConnection);
+        }
+        urlConnection.connect();
+        return urlConnection;
+    }
+
+    public void testGzipIsNegotiatedAndDecoded() throws Throwable {
+        HttpResponseReader responseReader = new HttpResponseReader();
+        HttpURLConnection urlConnection = connect(responseReader);
+
+        HttpResponseReader.Body body = responseReader.open(urlConnection);
+        try {
+            assertEquals(mForecastJson, body.readString("UTF-8"));
+            assertEquals(mGzipped.length, body.getWireBytes());
+            assertEquals(mPlain.length, body.getPayloadBytes());
+            assertTrue("Error: the forecast didn't compress", mGzipped.length < mPlain.length);
+        } finally {
+            body.close();
+            urlConnection.disconnect();
+        }
+
+        assertEquals(HttpResponseReader.ENCODING_GZIP, mServer.getRequests().get(0)
+                .getHeader(HttpResponseReader.HEADER_ACCEPT_ENCODING));
+    }
+
+    public void testStreamsIntoParser() throws Throwable {
+        HttpResponseReader responseReader = new HttpResponseReader();
+        HttpURLConnection urlConnection = connect(responseReader);
+
+        HttpResponseReader.Body body = responseReader.open(urlConnection);
+        TestForecastJsonParser.RecordingListener listener =
+                new TestForecastJsonParser.RecordingListener();
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, new ForecastJsonParser(listener).parse(body));
+        } finally {
+            body.close();
+            urlConnection.disconnect();
+        }
+        assertEquals(16, listener.mDays.size());
+    }
+
+    public void testPayloadLimit() throws Throwable {
+        // Small enough for the compressed body to pass the Content-Length check, but not the
+        // decompressed one.
+        HttpResponseReader responseReader = new HttpResponseReader(mGzipped.length + 1);
+        HttpURLConnection urlConnection = connect(responseReader);
+
+        HttpResponseReader.Body body = responseReader.open(urlConnection);
+        try {
+            body.readString("UTF-8");
+            fail("Error: the body was read past the payload limit");
+        } catch (HttpResponseReader.PayloadTooLargeException expected) {
+        } finally {
+            body.close();
+            urlConnection.disconnect();
+        }
+    }
+
+    public void testContentLengthOverLimit() throws Throwable {
+        HttpResponseReader responseReader = new HttpResponseReader(mGzipped.length - 1);
+        HttpURLConnection urlConnection = connect(responseReader);
+        try {
+            responseReader.open(urlConnection);
+            fail("Error: a body larger than the limit was opened");
+        } catch (HttpResponseReader.PayloadTooLargeException expected) {
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.sunshine.app.data.LocationIdCache;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+/*
+    Checks that the sync looks a location's row id up once and then takes it from the
+    LocationIdCache, by counting the queries that reach the provider.
+ */
+public class TestSyncLocationIds extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+
+    private LocationIdCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mCache = LocationIdCache.getInstance(mContext);
+        mCache.invalidate();
+    }
+
+    // Counts the queries the sync makes, so the test can tell a cache hit from a lookup.
+    static class CountingProvider extends WeatherProvider {
+        int mQueryCount;
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            mQueryCount++;
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+    }
+
+    private void waitForInvalidation() throws InterruptedException {
+        // The observer hears about it on a binder thread.
+        long deadline = SystemClock.elapsedRealtime() + 5000;
+        while (mCache.get(TEST_LOCATION) != -1) {
+            assertTrue("Error: the insert's notification did not clear the cache",
+                    SystemClock.elapsedRealtime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public void testSyncStopsQueryingKnownLocations() throws InterruptedException {
+        CountingProvider provider = new CountingProvider();
+        provider.attachInfo(mContext, null);
+        final MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(WeatherContract.CONTENT_AUTHORITY, provider);
+        Context context = new ContextWrapper(mContext) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return resolver;
+            }
+        };
+        SunshineSyncAdapter syncAdapter = new SunshineSyncAdapter(context, false);
+
+        try {
+            // A new location: looked up, not found, and inserted.
+            long misses = mCache.getMissCount();
+            long id = syncAdapter.addLocation(TEST_LOCATION, "North Pole", 64.7488, -147.353);
+            assertTrue("Error: location was not inserted", id > 0);
+            assertEquals(misses + 1, mCache.getMissCount());
+            assertEquals(1, provider.mQueryCount);
+
+            // The provider notifies its own insert, which clears the cache once more.
+            waitForInvalidation();
+
+            // Found in the table this time, and cached.
+            misses = mCache.getMissCount();
+            assertEquals(id, syncAdapter.addLocation(TEST_LOCATION, "North Pole",
+                    64.7488, -147.353));
+            assertEquals(misses + 1, mCache.getMissCount());
+            assertEquals(2, provider.mQueryCount);
+
+            // From the cache, without touching the provider.
+            misses = mCache.getMissCount();
+            long hits = mCache.getHitCount();
+            assertEquals(id, syncAdapter.addLocation(TEST_LOCATION, "North Pole",
+                    64.7488, -147.353));
+            assertEquals(hits + 1, mCache.getHitCount());
+            assertEquals(misses, mCache.getMissCount());
+            assertEquals("Error: a cached location was queried again", 2, provider.mQueryCount);
+        } finally {
+            provider.shutdown();
+        }
+    }
+}
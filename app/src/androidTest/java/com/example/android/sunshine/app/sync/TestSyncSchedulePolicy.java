@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import java.util.Random;
+
+public class TestSyncSchedulePolicy extends AndroidTestCase {
+
+    static class FakeClock implements SyncSchedulePolicy.Clock {
+        long mNow = 1419033600000L;  // December 20th, 2014
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    // Always returns the same value from nextDouble(), so the jitter is predictable.
+    static class FixedRandom extends Random {
+        double mValue;
+
+        FixedRandom(double value) {
+            mValue = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return mValue;
+        }
+    }
+
+    private FakeClock mClock;
+    private FixedRandom mRandom;
+    private SyncSchedulePolicy mPolicy;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClock = new FakeClock();
+        mRandom = new FixedRandom(0.0);
+        mPolicy = new SyncSchedulePolicy(mClock, mRandom);
+    }
+
+    public void testChangedKeepsBaseInterval() {
+        mPolicy.onChanged();
+        assertEquals(SyncSchedulePolicy.BASE_INTERVAL_SECONDS, mPolicy.getIntervalSeconds());
+        assertEquals(SyncSchedulePolicy.BASE_INTERVAL_SECONDS / 3, mPolicy.getFlexSeconds());
+        assertEquals(mClock.mNow + SyncSchedulePolicy.BASE_INTERVAL_SECONDS * 1000L,
+                mPolicy.getNextSyncMillis());
+    }
+
+    public void testUnchangedStretchesUpToCap() {
+        mPolicy.onUnchanged();
+        assertEquals(SyncSchedulePolicy.BASE_INTERVAL_SECONDS * 2, mPolicy.getIntervalSeconds());
+        mPolicy.onUnchanged();
+        assertEquals(SyncSchedulePolicy.BASE_INTERVAL_SECONDS * 4, mPolicy.getIntervalSeconds());
+
+        for (int i = 0; i < 40; i++) {
+            mPolicy.onUnchanged();
+        }
+        assertEquals(SyncSchedulePolicy.MAX_UNCHANGED_INTERVAL_SECONDS,
+                mPolicy.getIntervalSeconds());
+
+        // New data brings us straight back.
+        mPolicy.onChanged();
+        assertEquals(SyncSchedulePolicy.BASE_INTERVAL_SECONDS, mPolicy.getIntervalSeconds());
+        assertEquals(0, mPolicy.getUnchangedCount());
+    }
+
+    public void testServerErrorsBackOffExponentially() {
+        int expected = SyncSchedulePolicy.INITIAL_BACKOFF_SECONDS;
+        for (int i = 0; i < 3; i++) {
+            mClock.mNow += 1000;
+            mPolicy.onServerError();
+            assertEquals(expected, mPolicy.getIntervalSeconds());
+            assertEquals(0, mPolicy.getFlexSeconds());
+            assertEquals(mClock.mNow + expected * 1000L, mPolicy.getNextSyncMillis());
+            expected *= 2;
+        }
+
+        for (int i = 0; i < 40; i++) {
+            mPolicy.onServerError();
+        }
+        assertEquals(SyncSchedulePolicy.MAX_BACKOFF_SECONDS, mPolicy.getIntervalSeconds());
+    }
+
+    public void testJitterStaysWithinBounds() {
+        mRandom.mValue = 0.999999;
+        mPolicy.onServerError();
+        int low = mPolicy.getIntervalSeconds();
+        int floor = (int) (SyncSchedulePolicy.INITIAL_BACKOFF_SECONDS *
+                (1.0 - SyncSchedulePolicy.JITTER));
+        assertTrue("Error: jittered delay " + low + " below " + floor, low >= floor);
+        assertTrue(low < SyncSchedulePolicy.INITIAL_BACKOFF_SECONDS);
+
+        // Two devices with different luck shouldn't retry together.
+        SyncSchedulePolicy other = new SyncSchedulePolicy(mClock, new FixedRandom(0.25));
+        other.onServerError();
+        assertTrue(other.getIntervalSeconds() != low);
+    }
+
+    public void testRecoveryResetsBackoff() {
+        mPolicy.onServerError();
+        mPolicy.onServerError();
+        mPolicy.onChanged();
+        assertEquals(0, mPolicy.getFailureCount());
+        mPolicy.onServerError();
+        assertEquals(SyncSchedulePolicy.INITIAL_BACKOFF_SECONDS, mPolicy.getIntervalSeconds());
+
+        // An unchanged response also shows the server is back.
+        mPolicy.onServerError();
+        mPolicy.onUnchanged();
+        assertEquals(0, mPolicy.getFailureCount());
+    }
+
+    public void testStateSurvivesRestore() {
+        SharedPreferences prefs = mContext.getSharedPreferences("test_" +
+                SyncSchedulePolicy.PREFS_NAME, Context.MODE_PRIVATE);
+        mPolicy.onUnchanged();
+        mPolicy.onServerError();
+        SharedPreferences.Editor editor = prefs.edit();
+        mPolicy.writeTo(editor);
+        editor.commit();
+
+        SyncSchedulePolicy restored = new SyncSchedulePolicy(mClock, mRandom);
+        restored.readFrom(prefs);
+        assertEquals(mPolicy.getIntervalSeconds(), restored.getIntervalSeconds());
+        assertEquals(mPolicy.getUnchangedCount(), restored.getUnchangedCount());
+        assertEquals(mPolicy.getFailureCount(), restored.getFailureCount());
+        assertEquals(mPolicy.getNextSyncMillis(), restored.getNextSyncMillis());
+
+        prefs.edit().clear().commit();
+    }
+}
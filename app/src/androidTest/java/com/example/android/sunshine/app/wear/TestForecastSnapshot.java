@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.shared.ForecastSnapshot;
+import com.google.android.gms.wearable.DataMap;
+
+import java.io.IOException;
+
+/*
+    How the binary forecast compares on the wire with a DataMap of strings.  The codec itself is
+    tested on the JVM, in the shared module.
+ */
+public class TestForecastSnapshot extends AndroidTestCase {
+    private static final String LOG_TAG = TestForecastSnapshot.class.getSimpleName();
+
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final int DAYS = 14;
+    private static final int ITERATIONS = 1000;
+
+    private static ForecastSnapshot createForecast() {
+        ForecastSnapshot forecast = new ForecastSnapshot(DAYS);
+        for (int i = 0; i < DAYS; i++) {
+            forecast.setDay(i, TEST_DATE + i * DateUtils.DAY_IN_MILLIS,
+                    20.37 + i, 10.05 - i, 800 + (i % 5));
+        }
+        return forecast;
+    }
+
+    /**
+     * The same forecast as a DataMap of formatted strings, one key per value, which is what
+     * sending the whole forecast the way today's weather used to be sent would look like.
+     */
+    private DataMap createStringBaseline() {
+        DataMap dataMap = new DataMap();
+        for (int i = 0; i < DAYS; i++) {
+            dataMap.putLong("date" + i, TEST_DATE + i * DateUtils.DAY_IN_MILLIS);
+            dataMap.putString("high" + i, Utility.formatTemperature(mContext, 20.37 + i));
+            dataMap.putString("low" + i, Utility.formatTemperature(mContext, 10.05 - i));
+            dataMap.putInt("weatherId" + i, 800 + (i % 5));
+        }
+        return dataMap;
+    }
+
+    /**
+     * Compares the encoded size and decode time with the DataMap-of-strings baseline.  Not a
+     * pass/fail benchmark beyond the size, but the numbers in the log are what to watch.
+     */
+    public void testBenchmarkAgainstDataMap() throws IOException {
+        byte[] binary = createForecast().encode();
+        byte[] baseline = createStringBaseline().toByteArray();
+        // The DataMap around the binary payload adds a key, so compare what goes on the wire.
+        DataMap binaryMap = new DataMap();
+        binaryMap.putByteArray("forecast", binary);
+        // Serialized once, like the baseline, so both loops only time the decode.
+        byte[] binaryWire = binaryMap.toByteArray();
+        int binarySize = binaryWire.length;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ForecastSnapshot.decode(DataMap.fromByteArray(binaryWire).getByteArray("forecast"));
+        }
+        long binaryNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            DataMap dataMap = DataMap.fromByteArray(baseline);
+            for (int day = 0; day < DAYS; day++) {
+                dataMap.getLong("date" + day);
+                dataMap.getString("high" + day);
+                dataMap.getString("low" + day);
+                dataMap.getInt("weatherId" + day);
+            }
+        }
+        long baselineNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        Log.i(LOG_TAG, DAYS + " days: binary " + binary.length + " bytes (" + binarySize +
+                " in a DataMap), decoded in " + binaryNanos / 1000 + " us; strings " +
+                baseline.length + " bytes, decoded in " + baselineNanos / 1000 + " us");
+        assertTrue("Error: binary forecast (" + binarySize + " bytes) isn't smaller than " +
+                "the DataMap of strings (" + baseline.length + " bytes)",
+                binarySize < baseline.length);
+    }
+}
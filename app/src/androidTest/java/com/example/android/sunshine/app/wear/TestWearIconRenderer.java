@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+import java.nio.ByteBuffer;
+
+public class TestWearIconRenderer extends AndroidTestCase {
+
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 40;
+
+    private static Bitmap toBitmap(byte[] raw) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        Bitmap bitmap = Bitmap.createBitmap(buffer.getInt(), buffer.getInt(),
+                Bitmap.Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(buffer);
+        return bitmap;
+    }
+
+    public void testRendersAtTheRequestedSize() {
+        byte[] raw = WearIconRenderer.render(mContext.getResources(), R.drawable.art_clear,
+                WIDTH, HEIGHT);
+        assertEquals(WearIconRenderer.HEADER_BYTES + WIDTH * HEIGHT * 4, raw.length);
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        assertEquals(WIDTH, buffer.getInt());
+        assertEquals(HEIGHT, buffer.getInt());
+    }
+
+    public void testInteractiveIconKeepsItsColors() {
+        Bitmap icon = toBitmap(WearIconRenderer.render(mContext.getResources(),
+                R.drawable.art_clear, WIDTH, HEIGHT));
+        boolean colored = false;
+        for (int y = 0; y < HEIGHT && !colored; y++) {
+            for (int x = 0; x < WIDTH && !colored; x++) {
+                int pixel = icon.getPixel(x, y);
+                colored = Color.alpha(pixel) == 255 && pixel != Color.WHITE;
+            }
+        }
+        assertTrue("Error: the interactive icon has no color", colored);
+    }
+}
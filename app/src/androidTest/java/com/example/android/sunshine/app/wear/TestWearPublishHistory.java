@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.test.AndroidTestCase;
+
+public class TestWearPublishHistory extends AndroidTestCase {
+
+    private static final String PATH = "/weatherData";
+    private static final String OTHER_PATH = "/weatherIcon";
+
+    private static final byte[] PAYLOAD = { 25, 16, 3, 32 };
+    private static final byte[] OTHER_PAYLOAD = { 25, 16, 3, 33 };
+
+    private WearPublishHistory mHistory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mHistory = new WearPublishHistory(mContext);
+        mHistory.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHistory.clear();
+        super.tearDown();
+    }
+
+    public void testHashIsStable() {
+        assertEquals(WearPublishHistory.hash(PAYLOAD),
+                WearPublishHistory.hash(PAYLOAD.clone()));
+        assertFalse(WearPublishHistory.hash(PAYLOAD).equals(
+                WearPublishHistory.hash(OTHER_PAYLOAD)));
+    }
+
+    public void testNothingAcknowledgedAtFirst() {
+        assertFalse(mHistory.isLastAcknowledged(PATH, WearPublishHistory.hash(PAYLOAD)));
+    }
+
+    public void testAcknowledgedHashIsRemembered() {
+        mHistory.setLastAcknowledged(PATH, WearPublishHistory.hash(PAYLOAD));
+
+        // A new instance reads it back, as the next run of the service would.
+        WearPublishHistory history = new WearPublishHistory(mContext);
+        assertTrue(history.isLastAcknowledged(PATH, WearPublishHistory.hash(PAYLOAD)));
+        assertFalse(history.isLastAcknowledged(PATH, WearPublishHistory.hash(OTHER_PAYLOAD)));
+    }
+
+    public void testPathsAreIndependent() {
+        String hash = WearPublishHistory.hash(PAYLOAD);
+        mHistory.setLastAcknowledged(PATH, hash);
+        assertFalse(mHistory.isLastAcknowledged(OTHER_PATH, hash));
+        mHistory.setLastAcknowledged(OTHER_PATH, WearPublishHistory.hash(OTHER_PAYLOAD));
+        assertTrue(mHistory.isLastAcknowledged(PATH, hash));
+    }
+
+    public void testIconSizeIsRemembered() {
+        assertNull(mHistory.getIconSize());
+        mHistory.setIconSize(48, 40);
+
+        WearPublishHistory history = new WearPublishHistory(mContext);
+        int[] size = history.getIconSize();
+        assertEquals(48, size[0]);
+        assertEquals(40, size[1]);
+    }
+
+    public void testClear() {
+        mHistory.setLastAcknowledged(PATH, WearPublishHistory.hash(PAYLOAD));
+        mHistory.clear();
+        assertFalse(mHistory.isLastAcknowledged(PATH, WearPublishHistory.hash(PAYLOAD)));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.test.AndroidTestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class TestWearPublishStats extends AndroidTestCase {
+
+    public void testLatency() {
+        WearPublishStats stats = new WearPublishStats();
+        assertEquals(0, stats.getAverageLatencyNanos());
+        stats.recordSent(10000000L);
+        stats.recordSent(30000000L);
+        assertEquals(2, stats.getSentCount());
+        assertEquals(20000000L, stats.getAverageLatencyNanos());
+        assertEquals(30000000L, stats.getMaxLatencyNanos());
+    }
+
+    public void testFailures() {
+        WearPublishStats stats = new WearPublishStats();
+        stats.recordFailed();
+        stats.recordConnectFailed();
+        stats.recordCoalesced();
+        assertEquals(2, stats.getFailedCount());
+        assertEquals(1, stats.getConnectFailedCount());
+        assertEquals(1, stats.getCoalescedCount());
+        assertEquals(0, stats.getSentCount());
+    }
+
+    public void testDump() {
+        WearPublishStats stats = new WearPublishStats();
+        stats.recordSent(2000000L);
+        stats.recordSuppressed();
+        stats.recordCoalesced();
+        StringWriter out = new StringWriter();
+        stats.dump(new PrintWriter(out));
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("1 sent, 1 suppressed, 0 failed (0 connecting), 1 coalesced"));
+        assertTrue(dump, dump.contains("average 2.0 ms"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide map from location setting to the _id of its row in the location table, so the
+ * sync doesn't have to query the provider for it on every run.
+ *
+ * WeatherProvider keeps the cache in step with its own writes: it records every location it
+ * inserts, and forgets everything when locations are updated or deleted.  As a safety net the
+ * cache also clears itself whenever anyone notifies a change on
+ * {@link WeatherContract.LocationEntry#CONTENT_URI}; that costs one extra lookup after a new
+ * location is added, since the provider notifies its own inserts too.
+ */
+public class LocationIdCache {
+
+    private static LocationIdCache sInstance;
+
+    private final ConcurrentHashMap<String, Long> mIds = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    public static synchronized LocationIdCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocationIdCache();
+            // A null Handler runs onChange on the binder thread that delivers it.
+            context.getApplicationContext().getContentResolver().registerContentObserver(
+                    WeatherContract.LocationEntry.CONTENT_URI, true,
+                    new ContentObserver(null) {
+                        @Override
+                        public void onChange(boolean selfChange) {
+                            sInstance.invalidate();
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    LocationIdCache() {
+    }
+
+    /**
+     * @return the row id of the location, or -1 if it isn't cached
+     */
+    public long get(String locationSetting) {
+        Long id = mIds.get(locationSetting);
+        if (id == null) {
+            mMisses.incrementAndGet();
+            return -1;
+        }
+        mHits.incrementAndGet();
+        return id;
+    }
+
+    public void put(String locationSetting, long id) {
+        if (locationSetting != null && id > 0) {
+            mIds.put(locationSetting, id);
+        }
+    }
+
+    public void invalidate() {
+        mIds.clear();
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+}
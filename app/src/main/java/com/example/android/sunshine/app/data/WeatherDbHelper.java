@@ -15,9 +15,13 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -27,13 +31,94 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
+    // If you change the database schema, you must increment the database version and add a
+    // Migration from the previous version to MIGRATIONS.
+    static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // The provider looks weather up by location first and date second.  The index SQLite builds
+    // for UNIQUE (date, location_id) leads with the date, so it can't serve those lookups.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ");";
+
+    /**
+     * One step in the schema's history, taking the database from {@link #mFromVersion} to the
+     * version after it without losing the cached forecast.
+     */
+    abstract static class Migration {
+        final int mFromVersion;
+
+        Migration(int fromVersion) {
+            mFromVersion = fromVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    // In order, one per version from OLDEST_MIGRATABLE_VERSION up to DATABASE_VERSION - 1.
+    static final Migration[] MIGRATIONS = {
+            // 2 -> 3: index weather by (location_id, date)
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            }
+    };
+
+    // Older databases than this have no migration path, and are rebuilt from scratch.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
+
+    // Roughly 2MB with 4KB pages, enough to keep the forecast and its indexes in memory.
+    static final int PAGE_CACHE_PAGES = 500;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the loaders, widgets and Muzei keep reading the last
+        // committed forecast while the sync is writing the next one, instead of waiting for it.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        tune(db, db.isWriteAheadLoggingEnabled());
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure and setWriteAheadLoggingEnabled only exist from Jelly Bean on.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            boolean writeAheadLogging = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    && !db.isReadOnly() && enableWriteAheadLogging(db);
+            tune(db, writeAheadLogging);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static boolean enableWriteAheadLogging(SQLiteDatabase db) {
+        return db.enableWriteAheadLogging();
+    }
+
+    private static void tune(SQLiteDatabase db, boolean writeAheadLogging) {
+        if (writeAheadLogging) {
+            // In WAL mode NORMAL only syncs at checkpoints.  A crash can lose the last sync,
+            // which the next sync writes again, but never corrupts the file.  With a rollback
+            // journal it could, so there the default, FULL, stays.
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+        db.execSQL("PRAGMA cache_size = " + PAGE_CACHE_PAGES);
     }
 
     @Override
@@ -81,16 +166,46 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            Log.i(LOG_TAG, "No migration from version " + oldVersion + ", rebuilding");
+            recreate(sqLiteDatabase);
+            return;
+        }
+
+        // SQLiteOpenHelper already runs onUpgrade inside a transaction, so a step that throws
+        // rolls the whole upgrade back and leaves the file at oldVersion.  Each step still gets
+        // its own nested transaction so it can't leave half of itself behind on its own.
+        for (Migration migration : MIGRATIONS) {
+            if (migration.mFromVersion < oldVersion || migration.mFromVersion >= newVersion) {
+                continue;
+            }
+            long start = SystemClock.elapsedRealtime();
+            sqLiteDatabase.beginTransaction();
+            try {
+                migration.migrate(sqLiteDatabase);
+                sqLiteDatabase.setTransactionSuccessful();
+            } finally {
+                sqLiteDatabase.endTransaction();
+            }
+            Log.i(LOG_TAG, "Migrated from version " + migration.mFromVersion + " in " +
+                    (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // We can't know what a newer schema looks like, but the data is only a cache.
+        recreate(sqLiteDatabase);
+    }
+
+    private void recreate(SQLiteDatabase sqLiteDatabase) {
+        // This database is only a cache for online data, so when there is no migration the
+        // policy is to discard the data and start over.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
@@ -17,25 +17,63 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private LocationIdCache mLocationIdCache;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
+    /**
+     * What applyBatch keeps for the thread it is running on: the Uris that changed, so that
+     * observers hear about each of them once after the transaction has committed, the ids of
+     * locations inserted, which only go into the {@link LocationIdCache} once they are
+     * committed too, and the upserter that weather inserts in the batch share.
+     */
+    private static class BatchState {
+        final Set<Uri> mChanges = new LinkedHashSet<Uri>();
+        final Map<String, Long> mLocationIds = new HashMap<String, Long>();
+        WeatherUpserter mUpserter;
+        // Whether the operation being applied upserted a day that was already stored as it is
+        boolean mUnchanged;
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        WeatherUpserter getUpserter(SQLiteDatabase db) {
+            if (mUpserter == null) {
+                mUpserter = new WeatherUpserter(db);
+            }
+            return mUpserter;
+        }
+    }
+
+    private final ThreadLocal<BatchState> mBatchState = new ThreadLocal<BatchState>();
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +90,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -140,6 +178,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mLocationIdCache = LocationIdCache.getInstance(getContext());
         return true;
     }
 
@@ -233,11 +272,27 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                BatchState batchState = mBatchState.get();
+                long _id;
+                if (batchState != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    // Inside a batch, days that are already stored are updated in place.
+                    WeatherUpserter upserter = batchState.getUpserter(db);
+                    int changes = upserter.getInserted() + upserter.getUpdated();
+                    _id = upserter.upsert(values);
+                    batchState.mUnchanged =
+                            upserter.getInserted() + upserter.getUpdated() == changes;
+                } else {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                if (batchState != null && batchState.mUpserter != null
+                        && !batchState.mUpserter.hasChanges()) {
+                    // Nothing in the batch has changed so far; nothing to tell observers.
+                    return returnUri;
+                }
                 break;
             }
             case LOCATION: {
@@ -246,12 +301,21 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                BatchState batchState = mBatchState.get();
+                if (batchState != null) {
+                    // The batch could still roll back and take the row with it.
+                    batchState.mLocationIds.put(locationSetting, _id);
+                } else {
+                    mLocationIdCache.put(locationSetting, _id);
+                }
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -270,13 +334,16 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    mLocationIdCache.invalidate();
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -305,12 +372,16 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    // The update may have changed a location setting or an _id.
+                    mLocationIdCache.invalidate();
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,6 +392,9 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    return upsertWeather(db, uri, values);
+                }
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
@@ -335,13 +409,105 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Writes the rows through a {@link WeatherUpserter}: days that are already stored are
+     * updated in place, and observers are only notified if a row was inserted or changed.
+     *
+     * @return the number of rows written, whether or not they changed
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private int upsertWeather(SQLiteDatabase db, Uri uri, ContentValues[] values) {
+        int returnCount = 0;
+        WeatherUpserter upserter;
+        db.beginTransaction();
+        try {
+            upserter = new WeatherUpserter(db);
+            try {
+                for (ContentValues value : values) {
+                    normalizeDate(value);
+                    if (upserter.upsert(value) != -1) {
+                        returnCount++;
+                    }
+                }
+            } finally {
+                upserter.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        logUpsert(upserter);
+        if (upserter.hasChanges()) {
+            notifyChange(uri);
+        }
+        return returnCount;
+    }
+
+    private static void logUpsert(WeatherUpserter upserter) {
+        Log.d(LOG_TAG, "Weather upsert: " + upserter.getInserted() + " inserted, " +
+                upserter.getUpdated() + " updated, " + upserter.getUnchanged() + " unchanged");
+    }
+
+    /**
+     * Applies the whole batch in a single transaction; if any operation fails, none of them
+     * are applied.
+     *
+     * A weather insert that finds its day already stored with the same values leaves the row
+     * alone, and its result is a count of 0 rather than the row's Uri, so callers can tell how
+     * many days actually changed.  Such results can't be used as back references.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        BatchState batchState = new BatchState();
+        mBatchState.set(batchState);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            // Same as ContentProvider.applyBatch, noting the inserts that changed nothing
+            results = new ContentProviderResult[operations.size()];
+            for (int i = 0; i < results.length; i++) {
+                batchState.mUnchanged = false;
+                results[i] = operations.get(i).apply(this, results, i);
+                if (batchState.mUnchanged) {
+                    results[i] = new ContentProviderResult(0);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (batchState.mUpserter != null) {
+                logUpsert(batchState.mUpserter);
+                batchState.mUpserter.close();
+            }
+            db.endTransaction();
+            mBatchState.remove();
+        }
+        for (Map.Entry<String, Long> entry : batchState.mLocationIds.entrySet()) {
+            mLocationIdCache.put(entry.getKey(), entry.getValue());
+        }
+        for (Uri uri : batchState.mChanges) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    private void notifyChange(Uri uri) {
+        BatchState batchState = mBatchState.get();
+        if (batchState != null) {
+            batchState.mChanges.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Writes weather rows with three compiled statements that are reused for every row, instead of
+ * going through SQLiteDatabase.insert.
+ *
+ * A day that is already stored for the location is updated in place, and only if one of its
+ * values actually changed, rather than being deleted and re-inserted by the table's
+ * ON CONFLICT REPLACE clause.  That keeps row ids stable and lets callers tell whether anything
+ * changed at all.
+ *
+ * Not thread safe.  Use it inside a transaction and {@link #close()} it when done.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class WeatherUpserter {
+
+    // The columns that hold the forecast itself, as opposed to the row's key.
+    private static final String[] VALUE_COLUMNS = {
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private final SQLiteStatement mFindStatement;
+    private final SQLiteStatement mUpdateStatement;
+    private final SQLiteStatement mInsertStatement;
+
+    private int mInserted;
+    private int mUpdated;
+    private int mUnchanged;
+
+    WeatherUpserter(SQLiteDatabase db) {
+        // SELECT _id FROM weather WHERE location_id = ? AND date = ?
+        mFindStatement = db.compileStatement("SELECT " + WeatherEntry._ID +
+                " FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " = ?");
+
+        // UPDATE weather SET short_desc = ?, ... WHERE _id = ? AND (short_desc IS NOT ? OR ...)
+        StringBuilder update = new StringBuilder("UPDATE ").append(WeatherEntry.TABLE_NAME)
+                .append(" SET ");
+        StringBuilder changed = new StringBuilder();
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            if (i > 0) {
+                update.append(", ");
+                changed.append(" OR ");
+            }
+            update.append(VALUE_COLUMNS[i]).append(" = ?");
+            changed.append(VALUE_COLUMNS[i]).append(" IS NOT ?");
+        }
+        update.append(" WHERE ").append(WeatherEntry._ID).append(" = ? AND (")
+                .append(changed).append(")");
+        mUpdateStatement = db.compileStatement(update.toString());
+
+        // INSERT INTO weather (location_id, date, short_desc, ...) VALUES (?, ?, ?, ...)
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(WeatherEntry.TABLE_NAME)
+                .append(" (").append(WeatherEntry.COLUMN_LOC_KEY)
+                .append(", ").append(WeatherEntry.COLUMN_DATE);
+        for (String column : VALUE_COLUMNS) {
+            insert.append(", ").append(column);
+        }
+        insert.append(") VALUES (?, ?");
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            insert.append(", ?");
+        }
+        insert.append(")");
+        mInsertStatement = db.compileStatement(insert.toString());
+    }
+
+    /**
+     * Inserts the day, or updates the stored one if any of its values differ.  The date must
+     * already be normalized.
+     *
+     * @return the row id of the day, or -1 if it could not be written
+     */
+    long upsert(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            return -1;
+        }
+
+        long rowId;
+        try {
+            mFindStatement.bindLong(1, locationId);
+            mFindStatement.bindLong(2, date);
+            rowId = mFindStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // No row for that day yet
+            rowId = -1;
+        }
+
+        if (rowId == -1) {
+            mInsertStatement.clearBindings();
+            mInsertStatement.bindLong(1, locationId);
+            mInsertStatement.bindLong(2, date);
+            bindValues(mInsertStatement, 3, values);
+            try {
+                rowId = mInsertStatement.executeInsert();
+            } catch (SQLException e) {
+                // Same as SQLiteDatabase.insert: a row that breaks a constraint is skipped.
+                return -1;
+            }
+            if (rowId != -1) {
+                mInserted++;
+            }
+            return rowId;
+        }
+
+        mUpdateStatement.clearBindings();
+        bindValues(mUpdateStatement, 1, values);
+        mUpdateStatement.bindLong(VALUE_COLUMNS.length + 1, rowId);
+        bindValues(mUpdateStatement, VALUE_COLUMNS.length + 2, values);
+        try {
+            if (mUpdateStatement.executeUpdateDelete() > 0) {
+                mUpdated++;
+            } else {
+                mUnchanged++;
+            }
+        } catch (SQLException e) {
+            return -1;
+        }
+        return rowId;
+    }
+
+    private static void bindValues(SQLiteStatement statement, int firstIndex,
+                                   ContentValues values) {
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            int index = firstIndex + i;
+            Object value = values.get(VALUE_COLUMNS[i]);
+            if (value == null) {
+                statement.bindNull(index);
+            } else if (value instanceof String) {
+                statement.bindString(index, (String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                statement.bindDouble(index, ((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                statement.bindLong(index, ((Number) value).longValue());
+            } else {
+                statement.bindString(index, value.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the number of days that were not stored before
+     */
+    int getInserted() {
+        return mInserted;
+    }
+
+    /**
+     * @return the number of stored days that had at least one value changed
+     */
+    int getUpdated() {
+        return mUpdated;
+    }
+
+    /**
+     * @return the number of stored days that were left as they were
+     */
+    int getUnchanged() {
+        return mUnchanged;
+    }
+
+    /**
+     * @return true if any row was inserted or updated
+     */
+    boolean hasChanges() {
+        return mInserted > 0 || mUpdated > 0;
+    }
+
+    void close() {
+        mFindStatement.close();
+        mUpdateStatement.close();
+        mInsertStatement.close();
+    }
+}
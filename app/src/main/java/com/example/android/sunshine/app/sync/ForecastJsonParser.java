@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Parses the OpenWeatherMap daily forecast response.
+ *
+ * The streaming path reads the "list" array straight off the connection's input stream and
+ * hands each day to the {@link Listener} as soon as it has been read, so the payload is never
+ * held in memory as a String or as a JSONObject tree.  The String path is kept for devices
+ * older than Honeycomb, which don't have {@link JsonReader}.
+ *
+ * The ContentValues handed out for each day hold every weather column except the location
+ * key and the date; those belong to the caller.
+ */
+public class ForecastJsonParser {
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    // Number of weather columns the parser fills in for each day.
+    private static final int DAY_COLUMN_COUNT = 8;
+
+    public interface Listener {
+        /**
+         * Called once with the city the forecast belongs to.  OWM sends the city ahead of the
+         * list, but callers must not rely on that ordering.
+         */
+        void onCity(String cityName, double lat, double lon);
+
+        /**
+         * Called for each day of the forecast, in order.
+         *
+         * @param index position of the day in the "list" array, 0 being today
+         * @param weatherValues the weather columns for that day
+         */
+        void onDay(int index, ContentValues weatherValues);
+    }
+
+    private final Listener mListener;
+
+    public ForecastJsonParser(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Streams the forecast from the given input stream.  The stream is not closed.
+     *
+     * @return the "cod" value of the response, or {@link HttpURLConnection#HTTP_OK} if absent.
+     *         When it is not HTTP_OK the listener may not have received any days.
+     * @throws IOException if the stream could not be read
+     * @throws JSONException if the stream was read but is not a valid forecast
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public int parse(InputStream in) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            return readForecast(reader);
+        } catch (MalformedJsonException e) {
+            throw toJSONException(e);
+        } catch (IllegalStateException e) {
+            // Thrown by JsonReader when a value has an unexpected type
+            throw toJSONException(e);
+        } catch (NumberFormatException e) {
+            throw toJSONException(e);
+        }
+    }
+
+    /**
+     * Parses a forecast that has already been read into a String.
+     *
+     * @return the "cod" value of the response, or {@link HttpURLConnection#HTTP_OK} if absent.
+     */
+    public int parse(String forecastJsonStr) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (errorCode != HttpURLConnection.HTTP_OK) {
+                return errorCode;
+            }
+        }
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        mListener.onCity(cityJson.getString(OWM_CITY_NAME),
+                cityCoord.getDouble(OWM_LATITUDE),
+                cityCoord.getDouble(OWM_LONGITUDE));
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            ContentValues weatherValues = new ContentValues(DAY_COLUMN_COUNT);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    dayForecast.getDouble(OWM_PRESSURE));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    dayForecast.getInt(OWM_HUMIDITY));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    dayForecast.getDouble(OWM_WINDSPEED));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                    dayForecast.getDouble(OWM_WIND_DIRECTION));
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    weatherObject.getString(OWM_DESCRIPTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    weatherObject.getInt(OWM_WEATHER_ID));
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                    temperatureObject.getDouble(OWM_MAX));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                    temperatureObject.getDouble(OWM_MIN));
+
+            mListener.onDay(i, weatherValues);
+        }
+        return HttpURLConnection.HTTP_OK;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private int readForecast(JsonReader reader) throws IOException, JSONException {
+        boolean sawCity = false;
+        boolean sawList = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                // OWM sends this as a string on success and as a number on some errors.
+                // nextString() accepts both.
+                int code = Integer.parseInt(reader.nextString());
+                if (code != HttpURLConnection.HTTP_OK) {
+                    // An error response has nothing else worth reading.
+                    return code;
+                }
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader);
+                sawCity = true;
+            } else if (OWM_LIST.equals(name)) {
+                readList(reader);
+                sawList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!sawCity || !sawList) {
+            throw new JSONException("Forecast is missing " + (sawCity ? OWM_LIST : OWM_CITY));
+        }
+        return HttpURLConnection.HTTP_OK;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void readCity(JsonReader reader) throws IOException, JSONException {
+        String cityName = null;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (cityName == null || Double.isNaN(lat) || Double.isNaN(lon)) {
+            throw new JSONException("Incomplete " + OWM_CITY + " object");
+        }
+        mListener.onCity(cityName, lat, lon);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void readList(JsonReader reader) throws IOException, JSONException {
+        int index = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ContentValues weatherValues = new ContentValues(DAY_COLUMN_COUNT);
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_PRESSURE.equals(name)) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                            reader.nextDouble());
+                } else if (OWM_HUMIDITY.equals(name)) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                            reader.nextInt());
+                } else if (OWM_WINDSPEED.equals(name)) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                            reader.nextDouble());
+                } else if (OWM_WIND_DIRECTION.equals(name)) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                            reader.nextDouble());
+                } else if (OWM_TEMPERATURE.equals(name)) {
+                    readTemperature(reader, weatherValues);
+                } else if (OWM_WEATHER.equals(name)) {
+                    readWeather(reader, weatherValues);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (weatherValues.size() != DAY_COLUMN_COUNT) {
+                throw new JSONException("Incomplete forecast for day " + index);
+            }
+            mListener.onDay(index++, weatherValues);
+        }
+        reader.endArray();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readTemperature(JsonReader reader, ContentValues weatherValues)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, reader.nextDouble());
+            } else if (OWM_MIN.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, reader.nextDouble());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readWeather(JsonReader reader, ContentValues weatherValues)
+            throws IOException {
+        // Only the first element of the "weather" array is used.
+        boolean first = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_DESCRIPTION.equals(name)) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                            reader.nextString());
+                } else if (OWM_WEATHER_ID.equals(name)) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                            reader.nextInt());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    private static JSONException toJSONException(Exception e) {
+        JSONException jsonException = new JSONException(e.getMessage());
+        jsonException.initCause(e);
+        return jsonException;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Remembers the HTTP cache validators (ETag and Last-Modified) of the last forecast stored for
+ * each location setting, so the next sync can ask the server whether anything has changed.
+ *
+ * Validators are kept in their own preferences file, keyed by location setting.  They are only
+ * saved once a response has made it into the database; a validator for data we don't have
+ * would turn every later sync into a 304 with nothing behind it.
+ */
+public class ForecastValidatorStore {
+    static final String PREFS_NAME = "forecast_validators";
+
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String KEY_ETAG_PREFIX = "etag:";
+    private static final String KEY_LAST_MODIFIED_PREFIX = "last_modified:";
+
+    private final SharedPreferences mPrefs;
+
+    public ForecastValidatorStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds If-None-Match and If-Modified-Since to the request for the given location, if we have
+     * validators for it.  Must be called before the connection is opened.
+     *
+     * @return true if any conditional header was added
+     */
+    public boolean applyTo(HttpURLConnection urlConnection, String locationSetting) {
+        String etag = mPrefs.getString(KEY_ETAG_PREFIX + locationSetting, null);
+        String lastModified = mPrefs.getString(KEY_LAST_MODIFIED_PREFIX + locationSetting, null);
+        if (etag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            // Sent back exactly as the server wrote it rather than re-formatted from a long.
+            urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Saves the validators of a response whose forecast has been stored.  Validators the
+     * response doesn't carry are forgotten.
+     */
+    public void save(HttpURLConnection urlConnection, String locationSetting) {
+        save(locationSetting, urlConnection.getHeaderField(HEADER_ETAG),
+                urlConnection.getHeaderField(HEADER_LAST_MODIFIED));
+    }
+
+    /**
+     * Saves validators that were read off a response earlier.  Null values are forgotten.
+     */
+    public void save(String locationSetting, String etag, String lastModified) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        putOrRemove(editor, KEY_ETAG_PREFIX + locationSetting, etag);
+        putOrRemove(editor, KEY_LAST_MODIFIED_PREFIX + locationSetting, lastModified);
+        // We're on the sync thread, so it's fine to wait for the write.
+        editor.commit();
+    }
+
+    /**
+     * Forgets the validators for the given location, so that its next sync downloads the full
+     * forecast.
+     */
+    public void clear(String locationSetting) {
+        mPrefs.edit()
+                .remove(KEY_ETAG_PREFIX + locationSetting)
+                .remove(KEY_LAST_MODIFIED_PREFIX + locationSetting)
+                .commit();
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads HTTP response bodies for the sync adapter.
+ *
+ * Requests are sent with "Accept-Encoding: gzip" and the body is decompressed here, which also
+ * means we can tell how many bytes actually crossed the radio.  Reads go through a byte buffer
+ * borrowed from a small pool shared by all readers, and a body that decompresses to more than
+ * the configured maximum is cut off with a {@link PayloadTooLargeException}.
+ *
+ * Usage: call {@link #prepare} before connecting, then {@link #open} to get the body.
+ */
+public class HttpResponseReader {
+
+    // A 16 day forecast is roughly 8KB of JSON; anything near this is not a forecast.
+    public static final int DEFAULT_MAX_PAYLOAD_BYTES = 256 * 1024;
+
+    static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    static final String ENCODING_GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int POOL_SIZE = 4;
+
+    private static final Object sPoolLock = new Object();
+    private static final byte[][] sPool = new byte[POOL_SIZE][];
+    private static int sPoolCount = 0;
+
+    /**
+     * Thrown when a response body is larger than the reader allows.
+     */
+    public static class PayloadTooLargeException extends IOException {
+        public PayloadTooLargeException(String detailMessage) {
+            super(detailMessage);
+        }
+    }
+
+    private final int mMaxPayloadBytes;
+
+    public HttpResponseReader() {
+        this(DEFAULT_MAX_PAYLOAD_BYTES);
+    }
+
+    public HttpResponseReader(int maxPayloadBytes) {
+        mMaxPayloadBytes = maxPayloadBytes;
+    }
+
+    /**
+     * Asks the server for a compressed response.  Must be called before the connection is
+     * opened.
+     */
+    public void prepare(HttpURLConnection urlConnection) {
+        // Setting this ourselves turns off HttpURLConnection's transparent gzip handling, so
+        // the stream we get back is exactly what came over the wire.
+        urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+    }
+
+    /**
+     * Opens the body of the response.  The caller must close it, which also returns its buffer
+     * to the pool.
+     */
+    public Body open(HttpURLConnection urlConnection) throws IOException {
+        long contentLength = parseContentLength(urlConnection.getHeaderField("Content-Length"));
+        if (contentLength > mMaxPayloadBytes) {
+            // Compressed bodies only get bigger, so there's no point in reading this one.
+            throw new PayloadTooLargeException("Response is " + contentLength +
+                    " bytes, limit is " + mMaxPayloadBytes);
+        }
+
+        CountingInputStream wire = new CountingInputStream(urlConnection.getInputStream());
+        InputStream decoded = wire;
+        if (ENCODING_GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())) {
+            decoded = new GZIPInputStream(wire);
+        }
+        return new Body(wire, decoded, mMaxPayloadBytes);
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] obtainBuffer() {
+        synchronized (sPoolLock) {
+            if (sPoolCount > 0) {
+                byte[] buffer = sPool[--sPoolCount];
+                sPool[sPoolCount] = null;
+                return buffer;
+            }
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        synchronized (sPoolLock) {
+            if (sPoolCount < POOL_SIZE) {
+                sPool[sPoolCount++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * The decompressed body of a response, read through a pooled buffer.
+     */
+    public static class Body extends InputStream {
+        private final CountingInputStream mWire;
+        private final InputStream mSource;
+        private final int mMaxPayloadBytes;
+
+        private byte[] mBuffer;
+        private int mPosition;
+        private int mLimit;
+        private long mPayloadBytes;
+
+        Body(CountingInputStream wire, InputStream source, int maxPayloadBytes) {
+            mWire = wire;
+            mSource = source;
+            mMaxPayloadBytes = maxPayloadBytes;
+            mBuffer = obtainBuffer();
+        }
+
+        /**
+         * @return the number of bytes read off the connection so far
+         */
+        public long getWireBytes() {
+            return mWire.mCount;
+        }
+
+        /**
+         * @return the number of bytes read after decompression so far
+         */
+        public long getPayloadBytes() {
+            return mPayloadBytes;
+        }
+
+        /**
+         * Reads the rest of the body into a String.
+         */
+        public String readString(String charsetName) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            while (fill()) {
+                out.write(mBuffer, mPosition, mLimit - mPosition);
+                mPosition = mLimit;
+            }
+            return out.toString(charsetName);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mPosition == mLimit && !fill()) {
+                return -1;
+            }
+            return mBuffer[mPosition++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (mPosition == mLimit && !fill()) {
+                return -1;
+            }
+            int count = Math.min(len, mLimit - mPosition);
+            System.arraycopy(mBuffer, mPosition, b, off, count);
+            mPosition += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mLimit - mPosition;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mBuffer == null) {
+                return;
+            }
+            releaseBuffer(mBuffer);
+            mBuffer = null;
+            mSource.close();
+        }
+
+        /**
+         * Refills the buffer if it has been used up.
+         *
+         * @return false at the end of the body
+         */
+        private boolean fill() throws IOException {
+            if (mBuffer == null) {
+                throw new IOException("Body is closed");
+            }
+            if (mPosition < mLimit) {
+                return true;
+            }
+            int read = mSource.read(mBuffer, 0, mBuffer.length);
+            if (read == -1) {
+                mPosition = mLimit = 0;
+                return false;
+            }
+            mPayloadBytes += read;
+            if (mPayloadBytes > mMaxPayloadBytes) {
+                throw new PayloadTooLargeException("Response is over the " + mMaxPayloadBytes +
+                        " byte limit");
+            }
+            mPosition = 0;
+            mLimit = read;
+            return true;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the underlying stream.
+     */
+    static class CountingInputStream extends FilterInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int byteOffset, int byteCount) throws IOException {
+            int read = super.read(buffer, byteOffset, byteCount);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -7,11 +7,14 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -20,9 +23,10 @@ import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -35,38 +39,43 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.LocationIdCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import org.json.JSONArray;
+import com.example.android.sunshine.app.shared.ForecastSnapshot;
+import com.example.android.sunshine.app.wear.WearPublisherService;
+
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
+    // Interval at which to sync with the weather, in seconds, until SyncSchedulePolicy
+    // stretches or shortens it.
     // 60 seconds (1 minute) * 180 = 3 hours
-    public static final int SYNC_INTERVAL = 60 * 180;
+    public static final int SYNC_INTERVAL = SyncSchedulePolicy.BASE_INTERVAL_SECONDS;
     //sync every minute to update watchface
 //    public static final int SYNC_INTERVAL = 60;
 
@@ -74,6 +83,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    // Every saved location is fetched on a small pool, with no more than a couple of requests
+    // in flight to the same host.
+    private static final int MAX_PARALLEL_FETCHES = 4;
+    private static final int MAX_FETCHES_PER_HOST = 2;
+    private static final long FETCH_THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static ExecutorService sFetchExecutor;
+    private static final Map<String, Semaphore> sHostPermits = new HashMap<String, Semaphore>();
+
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -98,10 +115,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    GoogleApiClient googleApiClient;
-    Double mHighTemp;
-    Double mLowTemp;
-    int mWeatherId;
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+
+    private String mForecastBaseUrl = FORECAST_BASE_URL;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
@@ -110,15 +127,226 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        long syncStart = SystemClock.elapsedRealtime();
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<String> locationSettings = getLocationSettingsToSync(preferredLocation);
+
+        // Fetch and parse every location in parallel; nothing is written to the weather table
+        // until all of them are back.
+        List<Future<ForecastFetch>> futures = new ArrayList<Future<ForecastFetch>>();
+        for (final String locationSetting : locationSettings) {
+            futures.add(getFetchExecutor().submit(new Callable<ForecastFetch>() {
+                @Override
+                public ForecastFetch call() {
+                    return fetchForecast(locationSetting);
+                }
+            }));
+        }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        List<ForecastFetch> fetches = new ArrayList<ForecastFetch>(futures.size());
+        ForecastFetch preferredFetch = null;
+        boolean serverError = false;
+        // Whether any location got an answer about its forecast, fresh or not modified
+        boolean answered = false;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                ForecastFetch fetch;
+                try {
+                    fetch = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // fetchForecast() catches everything it expects, so this is a bug; lose
+                    // only this location, not everything the others fetched.
+                    Log.e(LOG_TAG, "Error fetching " + locationSettings.get(i), e.getCause());
+                    fetch = new ForecastFetch(locationSettings.get(i));
+                    fetch.mStatus = LOCATION_STATUS_UNKNOWN;
+                    syncResult.stats.numParseExceptions++;
+                }
+                Log.d(LOG_TAG, "Fetched " + fetch.mLocationSetting + " in " +
+                        fetch.mElapsedMillis + " ms, status " + fetch.mStatus +
+                        (fetch.mNotModified ? " (not modified)" : ""));
+                if (fetch.mStatus == LOCATION_STATUS_SERVER_DOWN) {
+                    syncResult.stats.numIoExceptions++;
+                    serverError = true;
+                } else if (fetch.mStatus == LOCATION_STATUS_SERVER_INVALID) {
+                    syncResult.stats.numParseExceptions++;
+                    serverError = true;
+                } else if (fetch.mStatus == LOCATION_STATUS_OK) {
+                    answered = true;
+                }
+                if (fetch.mLocationSetting.equals(preferredLocation)) {
+                    preferredFetch = fetch;
+                }
+                fetches.add(fetch);
+            }
+        } catch (InterruptedException e) {
+            Log.e(LOG_TAG, "Sync interrupted", e);
+            for (Future<ForecastFetch> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            // Cancelled, not failed: that says nothing about the server, so the schedule stays.
+            return;
+        }
+
+        int stored = storeForecasts(provider, fetches);
+        if (stored < 0) {
+            syncResult.databaseError = true;
+            setLocationStatus(getContext(), LOCATION_STATUS_UNKNOWN);
+            updateSchedule(false, true, false, syncResult);
+            return;
+        }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        if (preferredFetch != null && preferredFetch.mCollector != null &&
+                preferredFetch.mCollector.mValues.size() > 0) {
+            WearPublisherService.publish(getContext(),
+                    toForecastSnapshot(preferredFetch.mCollector.mValues));
+        }
+        if (stored > 0) {
+            updateWidgets();
+            updateMuzei();
+            notifyWeather();
+        }
+
+        LocationIdCache locationIdCache = LocationIdCache.getInstance(getContext());
+        Log.d(LOG_TAG, "Sync Complete. " + stored + " changed for " + fetches.size() +
+                " locations in " + (SystemClock.elapsedRealtime() - syncStart) + " ms, " +
+                "location ids " + locationIdCache.getHitCount() + " cached / " +
+                locationIdCache.getMissCount() + " looked up");
+        if (preferredFetch != null) {
+            setLocationStatus(getContext(), preferredFetch.mStatus);
+        }
+        updateSchedule(stored > 0, serverError, answered, syncResult);
+    }
+
+    /**
+     * Feeds the outcome of this sync to the {@link SyncSchedulePolicy} and moves the periodic
+     * sync if the policy wants a different interval.
+     *
+     * @param changed whether any forecast day was inserted or changed
+     * @param failed whether the sync failed, because of the server or the database
+     * @param answered whether any location's forecast was fetched or found not modified; a sync
+     *                 where every location was unknown or invalid says nothing about how often
+     *                 the forecast changes, so it leaves the schedule as it is
+     */
+    private void updateSchedule(boolean changed, boolean failed, boolean answered,
+            SyncResult syncResult) {
+        if (!changed && !failed && !answered) {
+            return;
+        }
+        Context context = getContext();
+        SharedPreferences prefs = context.getSharedPreferences(SyncSchedulePolicy.PREFS_NAME,
+                Context.MODE_PRIVATE);
+        SyncSchedulePolicy policy = new SyncSchedulePolicy();
+        policy.readFrom(prefs);
+        int previousInterval = policy.getIntervalSeconds();
+        int previousFlex = policy.getFlexSeconds();
+
+        if (changed) {
+            policy.onChanged();
+        } else if (failed) {
+            policy.onServerError();
+        } else {
+            policy.onUnchanged();
+        }
+
+        SharedPreferences.Editor editor = prefs.edit();
+        policy.writeTo(editor);
+        editor.commit();
+
+        if (policy.getIntervalSeconds() != previousInterval
+                || policy.getFlexSeconds() != previousFlex) {
+            Log.d(LOG_TAG, "Next sync in " + policy.getIntervalSeconds() + " s (" +
+                    policy.getUnchangedCount() + " unchanged, " + policy.getFailureCount() +
+                    " failed)");
+            configurePeriodicSync(context, policy.getIntervalSeconds(), policy.getFlexSeconds());
+        }
+        if (failed && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            // Keep the SyncManager's own retry of this failed sync in line with our backoff.
+            syncResult.delayUntil = policy.getNextSyncMillis() / 1000;
+        }
+    }
+
+    /**
+     * @return the preferred location followed by every other location saved in the database.
+     */
+    private List<String> getLocationSettingsToSync(String preferredLocation) {
+        Set<String> locationSettings = new LinkedHashSet<String>();
+        locationSettings.add(preferredLocation);
+
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+            cursor.close();
+        }
+        return new ArrayList<String>(locationSettings);
+    }
+
+    private static synchronized ExecutorService getFetchExecutor() {
+        if (sFetchExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_FETCHES,
+                    MAX_PARALLEL_FETCHES, FETCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            // Syncs are hours apart; don't keep idle threads around between them.
+            executor.allowCoreThreadTimeOut(true);
+            sFetchExecutor = executor;
+        }
+        return sFetchExecutor;
+    }
+
+    private static synchronized Semaphore getHostPermits(String host) {
+        Semaphore permits = sHostPermits.get(host);
+        if (permits == null) {
+            permits = new Semaphore(MAX_FETCHES_PER_HOST);
+            sHostPermits.put(host, permits);
+        }
+        return permits;
+    }
+
+    /**
+     * Points the fetches at another server, for tests.
+     */
+    void setForecastBaseUrl(String forecastBaseUrl) {
+        mForecastBaseUrl = forecastBaseUrl;
+    }
+
+    /**
+     * The outcome of fetching and parsing the forecast for one location.
+     */
+    static class ForecastFetch {
+        final String mLocationSetting;
+        @LocationStatus int mStatus = LOCATION_STATUS_UNKNOWN;
+        boolean mNotModified;
+        ForecastCollector mCollector;
+        String mETag;
+        String mLastModified;
+        long mElapsedMillis;
+
+        ForecastFetch(String locationSetting) {
+            mLocationSetting = locationSetting;
+        }
+    }
+
+    /**
+     * Downloads and parses the forecast for one location.  Runs on the fetch executor and only
+     * writes to the location table, which it needs to find out the location's row id.
+     */
+    ForecastFetch fetchForecast(String locationQuery) {
+        ForecastFetch fetch = new ForecastFetch(locationQuery);
+        long start = SystemClock.elapsedRealtime();
+
+        // These need to be declared outside the try/catch
+        // so that they can be released in the finally block.
+        HttpURLConnection urlConnection = null;
+        HttpResponseReader.Body body = null;
+        Semaphore hostPermits = null;
+        boolean hasPermit = false;
 
         String format = "json";
         String units = "metric";
@@ -128,15 +356,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // Construct the URL for the OpenWeatherMap query
             // Possible parameters are avaiable at OWM's forecast API page, at
             // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
             final String QUERY_PARAM = "q";
             final String FORMAT_PARAM = "mode";
             final String UNITS_PARAM = "units";
             final String DAYS_PARAM = "cnt";
             final String APPID_PARAM = "APPID";
 
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+            Uri builtUri = Uri.parse(mForecastBaseUrl).buildUpon()
                     .appendQueryParameter(QUERY_PARAM, locationQuery)
                     .appendQueryParameter(FORMAT_PARAM, format)
                     .appendQueryParameter(UNITS_PARAM, units)
@@ -146,136 +372,112 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
             URL url = new URL(builtUri.toString());
 
+            // Keep the number of requests to any one host bounded, however many locations
+            // there are.
+            hostPermits = getHostPermits(url.getHost());
+            hostPermits.acquire();
+            hasPermit = true;
+
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+            // Only make the request conditional if we still have the forecast it would
+            // tell us is current.
+            if (hasCurrentForecast(locationQuery)) {
+                new ForecastValidatorStore(getContext()).applyTo(urlConnection, locationQuery);
+            }
+            HttpResponseReader responseReader = new HttpResponseReader();
+            responseReader.prepare(urlConnection);
             urlConnection.connect();
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // What we have is still current, so there's nothing to parse or store.
+                fetch.mNotModified = true;
+                fetch.mStatus = LOCATION_STATUS_OK;
+                return fetch;
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            body = responseReader.open(urlConnection);
+
+            ForecastCollector collector = new ForecastCollector(locationQuery, numDays);
+            ForecastJsonParser parser = new ForecastJsonParser(collector);
+            int responseCode;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse the days straight off the wire.  An empty stream ends up in the
+                // IOException handler below, same as a dropped connection.
+                responseCode = parser.parse(body);
+            } else {
+                String forecastJsonStr = body.readString("UTF-8");
+                if (forecastJsonStr.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    fetch.mStatus = LOCATION_STATUS_SERVER_DOWN;
+                    return fetch;
+                }
+                responseCode = parser.parse(forecastJsonStr);
+            }
+            Log.d(LOG_TAG, "Read " + body.getPayloadBytes() + " bytes, " +
+                    body.getWireBytes() + " on the wire for " + locationQuery);
+
+            switch (responseCode) {
+                case HttpURLConnection.HTTP_OK:
+                    fetch.mStatus = LOCATION_STATUS_OK;
+                    fetch.mCollector = collector;
+                    fetch.mETag = urlConnection.getHeaderField(ForecastValidatorStore.HEADER_ETAG);
+                    fetch.mLastModified = urlConnection.getHeaderField(
+                            ForecastValidatorStore.HEADER_LAST_MODIFIED);
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    fetch.mStatus = LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    fetch.mStatus = LOCATION_STATUS_SERVER_DOWN;
+                    break;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            fetch.mStatus = LOCATION_STATUS_SERVER_DOWN;
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            fetch.mStatus = LOCATION_STATUS_SERVER_INVALID;
+        } catch (InterruptedException e) {
+            // The sync was cancelled while we were waiting for our turn.
+            Thread.currentThread().interrupt();
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
+            if (body != null) {
                 try {
-                    reader.close();
+                    body.close();
                 } catch (final IOException e) {
                     Log.e(LOG_TAG, "Error closing stream", e);
                 }
             }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (hasPermit) {
+                hostPermits.release();
+            }
+            fetch.mElapsedMillis = SystemClock.elapsedRealtime() - start;
         }
-        return;
+        return fetch;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Collects the days handed out by {@link ForecastJsonParser}, stamping each one with its
+     * normalized date and, once the city is known, the location row it belongs to.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
+    class ForecastCollector implements ForecastJsonParser.Listener {
+        final String mLocationSetting;
+        final Vector<ContentValues> mValues;
+        final Time mDayTime;
+        final int mJulianStartDay;
+        long mLocationId = -1;
 
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
-            }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        ForecastCollector(String locationSetting, int expectedDays) {
+            mLocationSetting = locationSetting;
+            mValues = new Vector<ContentValues>(expectedDays);
 
             // OWM returns daily forecasts based upon the local time of the city that is being
             // asked for, which means that we need to know the GMT offset to translate this data
@@ -289,99 +491,116 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             dayTime.setToNow();
 
             // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+            mJulianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
             // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
-
-                //send weather data for today i == 0
-                if (i == 0){
-                    mHighTemp = high;
-                    mLowTemp = low;
-                    mWeatherId = weatherId;
-                    sendWeatherToWatchFace();
-                }
+            mDayTime = new Time();
+        }
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mLocationId = addLocation(mLocationSetting, cityName, lat, lon);
+            // OWM sends the city first, but don't count on it.
+            for (ContentValues weatherValues : mValues) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            }
+        }
+
+        @Override
+        public void onDay(int index, ContentValues weatherValues) {
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            long dateTime = mDayTime.setJulianDay(mJulianStartDay + index);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
+            if (mLocationId != -1) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationId);
             }
+            mValues.add(weatherValues);
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+        long getOldestDayToKeep() {
+            return mDayTime.setJulianDay(mJulianStartDay - 1);
+        }
+    }
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+    /**
+     * Checks whether the database holds a forecast for the given location from today onwards.
+     */
+    private boolean hasCurrentForecast(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                        WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+    /**
+     * Writes every parsed forecast to the database in a single transaction, and prunes days
+     * that are now in the past.  The validators of each forecast are saved once it is in.
+     *
+     * @return the number of days that were inserted or changed, or -1 if the transaction failed
+     */
+    int storeForecasts(ContentProviderClient provider, List<ForecastFetch> fetches) {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        long oldestDayToKeep = 0;
+        for (ForecastFetch fetch : fetches) {
+            if (fetch.mCollector == null) {
+                continue;
+            }
+            for (ContentValues weatherValues : fetch.mCollector.mValues) {
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues)
+                        .build());
+            }
+            oldestDayToKeep = fetch.mCollector.getOldestDayToKeep();
+        }
+        if (operations.isEmpty()) {
+            return 0;
+        }
+        int inserts = operations.size();
 
+        // delete old data so we don't build up an endless history
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(oldestDayToKeep)})
+                .build());
 
+        ContentProviderResult[] results;
+        try {
+            results = provider.applyBatch(operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing forecasts", e);
+            return -1;
+        }
+        // WeatherProvider answers a day that was already stored as it is with a count instead
+        // of a Uri.
+        int changed = 0;
+        for (int i = 0; i < inserts; i++) {
+            if (results[i].uri != null) {
+                changed++;
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        ForecastValidatorStore validators = new ForecastValidatorStore(getContext());
+        for (ForecastFetch fetch : fetches) {
+            if (fetch.mCollector != null) {
+                validators.save(fetch.mLocationSetting, fetch.mETag, fetch.mLastModified);
+            }
         }
+        return changed;
     }
 
     private void updateWidgets() {
@@ -402,16 +621,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
-    //send weather data to watchface
-    private void sendWeatherToWatchFace() {
-        //get weather Icon
-
-        googleApiClient = new GoogleApiClient.Builder(getContext())
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
-        new SendWeatherDataTask().execute();
+    /**
+     * Packs the days of a forecast for the watch.
+     */
+    private static ForecastSnapshot toForecastSnapshot(List<ContentValues> days) {
+        ForecastSnapshot forecast = new ForecastSnapshot(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            ContentValues day = days.get(i);
+            forecast.setDay(i,
+                    day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                    day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        }
+        return forecast;
     }
 
     private void notifyWeather() {
@@ -531,7 +754,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      * @return the row ID of the added location.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+        LocationIdCache locationIdCache = LocationIdCache.getInstance(getContext());
+        long locationId = locationIdCache.get(locationSetting);
+        if (locationId != -1) {
+            return locationId;
+        }
 
         // First, check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
@@ -544,6 +771,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         if (locationCursor.moveToFirst()) {
             int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
             locationId = locationCursor.getLong(locationIdIndex);
+            locationIdCache.put(locationSetting, locationId);
         } else {
             // Now that the content provider is set up, inserting rows of data is pretty simple.
             // First create a ContentValues object to hold the data you want to insert.
@@ -563,6 +791,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             );
 
             // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
+            // WeatherProvider has already put it in the cache.
             locationId = ContentUris.parseId(insertedUri);
         }
 
@@ -674,59 +903,4 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
     }
-
-    private class SendWeatherDataTask extends AsyncTask<Void,Void,Void> {
-
-        @Override
-        protected Void doInBackground(Void... params) {
-            Context context = getContext();
-            Resources resources = context.getResources();
-            final String HIGH_TEMP_KEY = resources.getString(R.string.HIGH_TEMP_KEY);
-            final String LOW_TEMP_KEY = resources.getString(R.string.LOW_TEMP_KEY);
-            final String WEATHER_ID_KEY = resources.getString(R.string.WEATHER_ID_KEY);
-            final String WEATHER_DATA_PATH = resources.getString(R.string.WEATHER_DATA_PATH);
-            Log.d(LOG_TAG, "in handleActionDataUpdated");
-
-
-            if ( !googleApiClient.isConnected() ) {
-                googleApiClient.connect();
-            }
-
-
-            Log.d(LOG_TAG, "sending weather data");
-            DataMap dataMap = new DataMap();
-            String formattedHighTemp = Utility.formatTemperature(context, mHighTemp);
-            String formattedLowTemp = Utility.formatTemperature(context, mLowTemp);
-            dataMap.putString(HIGH_TEMP_KEY, formattedHighTemp);
-            dataMap.putString(LOW_TEMP_KEY, formattedLowTemp);
-            dataMap.putInt(WEATHER_ID_KEY, mWeatherId);
-
-            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_DATA_PATH);
-            putDataMapRequest.getDataMap().putAll(dataMap);
-            PutDataRequest request = putDataMapRequest.asPutDataRequest();
-            DataApi.DataItemResult dataItemResult = Wearable.DataApi.putDataItem(googleApiClient, request).await();
-
-            if (dataItemResult.getStatus().isSuccess()){
-                Log.d(LOG_TAG, "datamap: " + dataMap +  " successfully sent");
-            } else {
-                Log.d(LOG_TAG, "error: didn't send weather data");
-            }
-            return null;
-        }
-    }
-
-    @Override
-    public void onConnected(Bundle bundle) {
-
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-
-    }
 }
\ No newline at end of file
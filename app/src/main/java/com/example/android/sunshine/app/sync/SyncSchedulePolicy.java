@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SharedPreferences;
+
+import java.util.Random;
+
+/**
+ * Decides how long to wait before the next periodic sync, based on how the last ones went.
+ *
+ * - When the forecast changes, we sync every {@link #BASE_INTERVAL_SECONDS}.
+ * - Every sync in a row that finds nothing new doubles the interval, up to
+ *   {@link #MAX_UNCHANGED_INTERVAL_SECONDS}.
+ * - Every server error in a row doubles the retry delay, starting at
+ *   {@link #INITIAL_BACKOFF_SECONDS} and capped at the base interval.  The delay is jittered
+ *   so that a fleet of devices that failed together doesn't retry together.
+ *
+ * The policy holds no Android state besides what it is asked to read from and write to
+ * SharedPreferences, and takes its time from a {@link Clock}, so tests can drive it directly.
+ */
+public class SyncSchedulePolicy {
+
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    // 60 seconds (1 minute) * 180 = 3 hours
+    public static final int BASE_INTERVAL_SECONDS = 60 * 180;
+    public static final int MAX_UNCHANGED_INTERVAL_SECONDS = BASE_INTERVAL_SECONDS * 4;
+    public static final int INITIAL_BACKOFF_SECONDS = 60 * 15;
+    public static final int MAX_BACKOFF_SECONDS = BASE_INTERVAL_SECONDS;
+
+    // The backoff delay is picked at random from [delay * (1 - JITTER), delay]
+    static final double JITTER = 0.5;
+
+    static final String PREFS_NAME = "sync_schedule";
+    private static final String KEY_UNCHANGED_COUNT = "unchanged_count";
+    private static final String KEY_FAILURE_COUNT = "failure_count";
+    private static final String KEY_INTERVAL = "interval";
+    private static final String KEY_NEXT_SYNC = "next_sync";
+
+    private final Clock mClock;
+    private final Random mRandom;
+
+    private int mUnchangedCount;
+    private int mFailureCount;
+    private int mIntervalSeconds = BASE_INTERVAL_SECONDS;
+    private long mNextSyncMillis;
+
+    public SyncSchedulePolicy() {
+        this(SYSTEM_CLOCK, new Random());
+    }
+
+    public SyncSchedulePolicy(Clock clock, Random random) {
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /**
+     * Records a sync that stored new forecast data.
+     */
+    public void onChanged() {
+        mUnchangedCount = 0;
+        mFailureCount = 0;
+        schedule(BASE_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Records a sync that found nothing new, for example because every request came back 304.
+     */
+    public void onUnchanged() {
+        mFailureCount = 0;
+        mUnchangedCount++;
+        long interval = (long) BASE_INTERVAL_SECONDS << Math.min(mUnchangedCount, 30);
+        schedule((int) Math.min(interval, MAX_UNCHANGED_INTERVAL_SECONDS));
+    }
+
+    /**
+     * Records a sync that failed because the server was down or sent something we couldn't
+     * read.  The streak of unchanged syncs is kept, since it says nothing about the data.
+     */
+    public void onServerError() {
+        mFailureCount++;
+        long delay = (long) INITIAL_BACKOFF_SECONDS << Math.min(mFailureCount - 1, 30);
+        delay = Math.min(delay, MAX_BACKOFF_SECONDS);
+        double jitter = 1.0 - JITTER * mRandom.nextDouble();
+        schedule((int) Math.max(1, Math.round(delay * jitter)));
+    }
+
+    private void schedule(int intervalSeconds) {
+        mIntervalSeconds = intervalSeconds;
+        mNextSyncMillis = mClock.currentTimeMillis() + intervalSeconds * 1000L;
+    }
+
+    /**
+     * @return the period the sync adapter should run at, in seconds
+     */
+    public int getIntervalSeconds() {
+        return mIntervalSeconds;
+    }
+
+    /**
+     * @return how early the system may run the periodic sync, in seconds
+     */
+    public int getFlexSeconds() {
+        // While backing off, run on time; the jitter already spreads devices out.
+        return mFailureCount > 0 ? 0 : mIntervalSeconds / 3;
+    }
+
+    /**
+     * @return when, in milliseconds since the epoch, the next sync is due
+     */
+    public long getNextSyncMillis() {
+        return mNextSyncMillis;
+    }
+
+    public int getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+    public int getFailureCount() {
+        return mFailureCount;
+    }
+
+    public void readFrom(SharedPreferences prefs) {
+        mUnchangedCount = prefs.getInt(KEY_UNCHANGED_COUNT, 0);
+        mFailureCount = prefs.getInt(KEY_FAILURE_COUNT, 0);
+        mIntervalSeconds = prefs.getInt(KEY_INTERVAL, BASE_INTERVAL_SECONDS);
+        mNextSyncMillis = prefs.getLong(KEY_NEXT_SYNC, 0);
+    }
+
+    public void writeTo(SharedPreferences.Editor editor) {
+        editor.putInt(KEY_UNCHANGED_COUNT, mUnchangedCount)
+                .putInt(KEY_FAILURE_COUNT, mFailureCount)
+                .putInt(KEY_INTERVAL, mIntervalSeconds)
+                .putLong(KEY_NEXT_SYNC, mNextSyncMillis);
+    }
+}
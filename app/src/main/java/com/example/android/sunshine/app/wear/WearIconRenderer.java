@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Renders weather art at the exact size the watch face draws it, as raw pixels the watch can
+ * copy into a bitmap without decoding or scaling anything.
+ *
+ * The format is the width and height as ints, followed by the ARGB_8888 pixels as
+ * Bitmap.copyPixelsToBuffer writes them.  Only the interactive art is rendered: in ambient
+ * mode the watch draws its own outline art, which lights far fewer pixels than the full art.
+ */
+class WearIconRenderer {
+    static final int HEADER_BYTES = 8;
+
+    static byte[] render(Resources resources, int artResource, int width, int height) {
+        Bitmap art = BitmapFactory.decodeResource(resources, artResource);
+        Bitmap icon = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        new Canvas(icon).drawBitmap(art, null, new Rect(0, 0, width, height), paint);
+        art.recycle();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + icon.getRowBytes() * height);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        icon.copyPixelsToBuffer(buffer);
+        icon.recycle();
+        return buffer.array();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Remembers a hash of the last payload the data layer accepted for each path, so
+ * {@link WearPublisherService} can skip putting the same weather again.  Every put wakes the
+ * watch and redraws the face, while most syncs leave the forecast as it was.
+ *
+ * Hashes are kept in their own preferences file and only saved once a put has succeeded; a
+ * failed put must not stop the next one.  Data items outlive the connection, so a watch that
+ * pairs later still gets the item we skipped re-sending.
+ *
+ * It also keeps the size the watch face last asked icons to be rendered at, so deciding whether
+ * the icon needs sending doesn't take a round trip to the watch.
+ */
+class WearPublishHistory {
+    static final String PREFS_NAME = "wear_publish_history";
+
+    private static final String KEY_LAST_ACKNOWLEDGED_HASH_PREFIX = "last_acknowledged_hash:";
+    private static final String KEY_ICON_WIDTH = "icon_width";
+    private static final String KEY_ICON_HEIGHT = "icon_height";
+
+    private final SharedPreferences mPrefs;
+
+    WearPublishHistory(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return a SHA-1 of the payload, in a form that can go into preferences
+     */
+    static String hash(byte[] payload) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(payload);
+            return Base64.encodeToString(digest, Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return true if the hash is that of the last payload the data layer accepted for the path
+     */
+    boolean isLastAcknowledged(String path, String hash) {
+        return hash.equals(mPrefs.getString(KEY_LAST_ACKNOWLEDGED_HASH_PREFIX + path, null));
+    }
+
+    void setLastAcknowledged(String path, String hash) {
+        // We're on the publisher thread, so it's fine to wait for the write.
+        mPrefs.edit().putString(KEY_LAST_ACKNOWLEDGED_HASH_PREFIX + path, hash).commit();
+    }
+
+    /**
+     * @return the width and height the watch face last published for icons, or null if we
+     *         haven't seen it publish one
+     */
+    int[] getIconSize() {
+        int width = mPrefs.getInt(KEY_ICON_WIDTH, 0);
+        int height = mPrefs.getInt(KEY_ICON_HEIGHT, 0);
+        return width > 0 && height > 0 ? new int[] {width, height} : null;
+    }
+
+    void setIconSize(int width, int height) {
+        mPrefs.edit().putInt(KEY_ICON_WIDTH, width).putInt(KEY_ICON_HEIGHT, height).commit();
+    }
+
+    /**
+     * Forgets every payload, so that the next publish is sent whatever it holds.
+     */
+    void clear() {
+        mPrefs.edit().clear().commit();
+    }
+}
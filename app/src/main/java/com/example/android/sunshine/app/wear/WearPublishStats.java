@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Counts what {@link WearPublisherService} did with the snapshots it was given: how many were
+ * sent and how long that took, how many failed, how many were replaced by a newer one before
+ * they could go out, and how many were suppressed because the watch already had them.
+ *
+ * Updated from the publisher thread and read from dumpsys, so every method is synchronized.
+ */
+class WearPublishStats {
+    private long mSentCount;
+    private long mFailedCount;
+    private long mCoalescedCount;
+    private long mSuppressedCount;
+    private long mConnectFailedCount;
+    private long mIconSentCount;
+
+    private long mTotalLatencyNanos;
+    private long mMaxLatencyNanos;
+    private long mLastLatencyNanos;
+
+    /**
+     * Records a snapshot the data layer accepted, and how long it took from the request to
+     * publish it, including any time spent connecting.
+     */
+    synchronized void recordSent(long latencyNanos) {
+        mSentCount++;
+        mTotalLatencyNanos += latencyNanos;
+        mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latencyNanos);
+        mLastLatencyNanos = latencyNanos;
+    }
+
+    synchronized void recordFailed() {
+        mFailedCount++;
+    }
+
+    /**
+     * Records a failure to connect to the data layer; the snapshot counts as failed too.
+     */
+    synchronized void recordConnectFailed() {
+        mConnectFailedCount++;
+        mFailedCount++;
+    }
+
+    /**
+     * Records a snapshot that was dropped because a newer one arrived while it waited.
+     */
+    synchronized void recordCoalesced() {
+        mCoalescedCount++;
+    }
+
+    /**
+     * Records a snapshot that wasn't sent because it was the same as the last one sent.
+     */
+    synchronized void recordSuppressed() {
+        mSuppressedCount++;
+    }
+
+    synchronized void recordIconSent() {
+        mIconSentCount++;
+    }
+
+    synchronized long getSentCount() {
+        return mSentCount;
+    }
+
+    synchronized long getFailedCount() {
+        return mFailedCount;
+    }
+
+    synchronized long getConnectFailedCount() {
+        return mConnectFailedCount;
+    }
+
+    synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    synchronized long getIconSentCount() {
+        return mIconSentCount;
+    }
+
+    /**
+     * @return the average send latency, or 0 if nothing was sent
+     */
+    synchronized long getAverageLatencyNanos() {
+        return mSentCount == 0 ? 0 : mTotalLatencyNanos / mSentCount;
+    }
+
+    synchronized long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println(String.format(Locale.US,
+                "Wear publishes: %d sent, %d suppressed, %d failed (%d connecting), %d coalesced",
+                mSentCount, mSuppressedCount, mFailedCount, mConnectFailedCount,
+                mCoalescedCount));
+        writer.println(String.format(Locale.US, "Icons sent: %d", mIconSentCount));
+        writer.println(String.format(Locale.US,
+                "Send latency: last %.1f ms, average %.1f ms, max %.1f ms",
+                mLastLatencyNanos / 1e6, getAverageLatencyNanos() / 1e6,
+                mMaxLatencyNanos / 1e6));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "%d sent, %d suppressed, %d failed, %d coalesced, average %.1f ms",
+                mSentCount, mSuppressedCount, mFailedCount, mCoalescedCount,
+                getAverageLatencyNanos() / 1e6);
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.shared.ForecastSnapshot;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the forecast to the watch face through the Wearable data layer, as a
+ * {@link ForecastSnapshot} and the unit the user wants it shown in.  When today's condition
+ * changes it also sends the condition's interactive icon, rendered by {@link WearIconRenderer}
+ * at the size the watch face published under ICON_SIZE_PATH.
+ *
+ * The service owns one GoogleApiClient for as long as it runs and does all its work on its own
+ * thread, so callers just hand it a snapshot and move on.  Snapshots that arrive while another
+ * is waiting replace it; only the latest weather is worth sending, and it isn't sent at all if
+ * it's the same as the last one the data layer accepted.  After a while with nothing to send
+ * the service disconnects and stops itself.
+ *
+ * adb shell dumpsys activity service com.example.android.sunshine.app/.wear.WearPublisherService
+ * prints the send counts and latency.
+ */
+public class WearPublisherService extends Service {
+    private static final String LOG_TAG = WearPublisherService.class.getSimpleName();
+
+    private static final String ACTION_PUBLISH =
+            "com.example.android.sunshine.app.wear.action.PUBLISH";
+    private static final String EXTRA_FORECAST = "forecast";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+    // How long the client stays connected after the last send, in case another sync follows
+    private static final long IDLE_TIMEOUT_MILLIS = 5 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static final int MSG_SEND = 1;
+    private static final int MSG_IDLE = 2;
+
+    private final WearPublishStats mStats = new WearPublishStats();
+    private WearPublishHistory mHistory;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private GoogleApiClient mGoogleApiClient;
+
+    // The snapshot waiting to be sent and when it was asked for; guarded by this
+    private Intent mPending;
+    private long mPendingSinceNanos;
+    // Only touched on mThread
+    private int mLastStartId;
+
+    /**
+     * Asks the service to send the forecast to the watch.  Returns immediately.
+     */
+    public static void publish(Context context, ForecastSnapshot forecast) {
+        context.startService(new Intent(ACTION_PUBLISH)
+                .setClass(context, WearPublisherService.class)
+                .putExtra(EXTRA_FORECAST, forecast.encode()));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_SEND:
+                        mLastStartId = msg.arg1;
+                        send();
+                        return true;
+                    case MSG_IDLE:
+                        Log.d(LOG_TAG, "Idle, disconnecting. " + mStats);
+                        mGoogleApiClient.disconnect();
+                        // Does nothing if a publish came in after this message was posted.
+                        stopSelf(mLastStartId);
+                        return true;
+                }
+                return false;
+            }
+        });
+        mHistory = new WearPublishHistory(this);
+        mGoogleApiClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent == null || !ACTION_PUBLISH.equals(intent.getAction())) {
+            return START_NOT_STICKY;
+        }
+        synchronized (this) {
+            if (mPending != null) {
+                mStats.recordCoalesced();
+            } else {
+                mPendingSinceNanos = System.nanoTime();
+            }
+            mPending = intent;
+        }
+        mHandler.removeMessages(MSG_IDLE);
+        // One queued send is enough; it picks up whatever is pending when it runs.
+        mHandler.removeMessages(MSG_SEND);
+        mHandler.obtainMessage(MSG_SEND, startId, 0).sendToTarget();
+        // The next sync publishes again, so there's nothing to redeliver if we're killed.
+        return START_NOT_STICKY;
+    }
+
+    private void send() {
+        Intent intent;
+        long sinceNanos;
+        synchronized (this) {
+            intent = mPending;
+            sinceNanos = mPendingSinceNanos;
+            mPending = null;
+        }
+        if (intent == null) {
+            return;
+        }
+
+        byte[] forecast = intent.getByteArrayExtra(EXTRA_FORECAST);
+        publishForecast(forecast, sinceNanos);
+        // Checked every time, not only when the forecast changed, so an icon that failed to
+        // send goes out with the next sync.  Without a connection when the watch has it already.
+        publishIcon(forecast);
+        scheduleIdle();
+    }
+
+    /**
+     * @return true if the client is connected, connecting it first if need be
+     */
+    private boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        ConnectionResult result = mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+        if (!result.isSuccess()) {
+            Log.w(LOG_TAG, "Couldn't connect to the data layer: " + result);
+            mStats.recordConnectFailed();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends the forecast, unless the watch already has it.
+     */
+    private void publishForecast(byte[] forecast, long sinceNanos) {
+        String path = getString(R.string.WEATHER_DATA_PATH);
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(path);
+        putDataMapRequest.getDataMap().putByteArray(getString(R.string.FORECAST_KEY), forecast);
+        // Read now rather than when publish() was called, so a change of units made while
+        // the snapshot waited goes out with it.
+        putDataMapRequest.getDataMap().putBoolean(getString(R.string.METRIC_KEY),
+                Utility.isMetric(this));
+
+        // Checked before connecting; most syncs leave the forecast as it was.
+        String hash = WearPublishHistory.hash(putDataMapRequest.getDataMap().toByteArray());
+        if (mHistory.isLastAcknowledged(path, hash)) {
+            mStats.recordSuppressed();
+            Log.d(LOG_TAG, "Forecast unchanged, not sending. " + mStats);
+            return;
+        }
+        if (!connect()) {
+            return;
+        }
+
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient,
+                putDataMapRequest.asPutDataRequest()).await(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.getStatus().isSuccess()) {
+            mStats.recordFailed();
+            Log.w(LOG_TAG, "Couldn't send the forecast: " + result.getStatus());
+            return;
+        }
+        long latencyNanos = System.nanoTime() - sinceNanos;
+        mStats.recordSent(latencyNanos);
+        mHistory.setLastAcknowledged(path, hash);
+        Log.d(LOG_TAG, "Sent the forecast in " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) +
+                " ms");
+    }
+
+    /**
+     * Sends the icon for today's condition, rendered at the size the watch face draws it, if the
+     * watch has told us that size and hasn't already got the icon.
+     *
+     * The size is remembered in {@link WearPublishHistory} and only read again from the watch
+     * when we are connected anyway, so an unchanged icon costs no connection at all.
+     */
+    private void publishIcon(byte[] forecast) {
+        int weatherId;
+        try {
+            ForecastSnapshot snapshot = ForecastSnapshot.decode(forecast);
+            if (snapshot.getDayCount() == 0) {
+                return;
+            }
+            weatherId = snapshot.getWeatherId(0);
+        } catch (IOException e) {
+            // We encoded it ourselves.
+            throw new RuntimeException(e);
+        }
+        int artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResource == -1) {
+            return;
+        }
+        int[] size = mHistory.getIconSize();
+        if (size == null || mGoogleApiClient.isConnected()) {
+            // Never seen, or connected to send the forecast anyway: ask the watch for it now.
+            if (!connect()) {
+                return;
+            }
+            int[] publishedSize = readIconSize();
+            if (publishedSize != null) {
+                size = publishedSize;
+                mHistory.setIconSize(size[0], size[1]);
+            }
+        }
+        if (size == null) {
+            Log.d(LOG_TAG, "The watch hasn't published its icon size, not sending an icon");
+            return;
+        }
+
+        // Connecting and rendering are the expensive parts, so the check is on what would be
+        // rendered, before either.
+        String path = getString(R.string.ICON_PATH);
+        String hash = WearPublishHistory.hash(
+                (artResource + "@" + size[0] + "x" + size[1]).getBytes());
+        if (mHistory.isLastAcknowledged(path, hash) || !connect()) {
+            return;
+        }
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(path);
+        DataMap dataMap = putDataMapRequest.getDataMap();
+        dataMap.putInt(getString(R.string.WEATHER_ID_KEY), weatherId);
+        dataMap.putInt(getString(R.string.ICON_WIDTH_KEY), size[0]);
+        dataMap.putInt(getString(R.string.ICON_HEIGHT_KEY), size[1]);
+        dataMap.putAsset(getString(R.string.ICON_INTERACTIVE_KEY), Asset.createFromBytes(
+                WearIconRenderer.render(getResources(), artResource, size[0], size[1])));
+
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient,
+                putDataMapRequest.asPutDataRequest()).await(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.getStatus().isSuccess()) {
+            Log.w(LOG_TAG, "Couldn't send the icon: " + result.getStatus());
+            return;
+        }
+        mStats.recordIconSent();
+        mHistory.setLastAcknowledged(path, hash);
+    }
+
+    /**
+     * @return the width and height the watch face draws icons at, or null if no watch has said
+     */
+    private int[] readIconSize() {
+        Uri uri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(getString(R.string.ICON_SIZE_PATH))
+                .build();
+        DataItemBuffer dataItems = Wearable.DataApi.getDataItems(mGoogleApiClient, uri)
+                .await(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try {
+            if (!dataItems.getStatus().isSuccess() || dataItems.getCount() == 0) {
+                return null;
+            }
+            // With more than one watch, the first one wins; the others scale their own art.
+            DataMap dataMap = DataMapItem.fromDataItem(dataItems.get(0)).getDataMap();
+            return new int[] {
+                    dataMap.getInt(getString(R.string.ICON_WIDTH_KEY)),
+                    dataMap.getInt(getString(R.string.ICON_HEIGHT_KEY))
+            };
+        } finally {
+            dataItems.release();
+        }
+    }
+
+    private void scheduleIdle() {
+        mHandler.removeMessages(MSG_IDLE);
+        mHandler.sendEmptyMessageDelayed(MSG_IDLE, IDLE_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public void onDestroy() {
+        mHandler.removeCallbacksAndMessages(null);
+        // Disconnect on the thread that connected, then let it finish.
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mGoogleApiClient.disconnect();
+                Looper.myLooper().quit();
+            }
+        });
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mStats.dump(writer);
+    }
+}
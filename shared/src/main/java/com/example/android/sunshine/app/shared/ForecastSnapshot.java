@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The whole forecast for the preferred location, in the binary form it travels to the watch in.
+ * The phone encodes it and the watch decodes it, both with this class.
+ *
+ * Temperatures are kept in Celsius, as in the database, so a change of units doesn't change the
+ * payload; the watch formats them itself.  The encoding is a version byte and a day count,
+ * followed by one packed array per column:
+ * <pre>
+ *   byte    version
+ *   byte    days
+ *   long[]  dates, in milliseconds, as stored in the weather table
+ *   short[] highs, in tenths of a degree Celsius
+ *   short[] lows, in tenths of a degree Celsius
+ *   short[] OpenWeatherMap condition ids
+ * </pre>
+ * Bump FORMAT_VERSION when the layout changes.
+ */
+public class ForecastSnapshot {
+    static final int FORMAT_VERSION = 1;
+    static final int MAX_DAYS = 255;
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final long[] mDates;
+    private final short[] mHighs;
+    private final short[] mLows;
+    private final short[] mWeatherIds;
+
+    public ForecastSnapshot(int days) {
+        if (days < 0 || days > MAX_DAYS) {
+            throw new IllegalArgumentException("Can't hold " + days + " days");
+        }
+        mDates = new long[days];
+        mHighs = new short[days];
+        mLows = new short[days];
+        mWeatherIds = new short[days];
+    }
+
+    public void setDay(int index, long date, double high, double low, int weatherId) {
+        mDates[index] = date;
+        mHighs[index] = toTenths(high);
+        mLows[index] = toTenths(low);
+        mWeatherIds[index] = (short) weatherId;
+    }
+
+    private static short toTenths(double celsius) {
+        return (short) Math.round(celsius * 10);
+    }
+
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public double getHigh(int index) {
+        return mHighs[index] / 10.0;
+    }
+
+    public double getLow(int index) {
+        return mLows[index] / 10.0;
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    /**
+     * @return the day whose forecast applies at the given time: the latest one that has
+     *         started, or -1 if the forecast hasn't started yet or ran out more than a day ago
+     */
+    public int indexOfDay(long nowMillis) {
+        for (int i = mDates.length - 1; i >= 0; i--) {
+            if (mDates[i] <= nowMillis) {
+                return nowMillis - mDates[i] < DAY_IN_MILLIS ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    public byte[] encode() {
+        int days = mDates.length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 + days * (8 + 2 + 2 + 2));
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(days);
+            for (long date : mDates) {
+                out.writeLong(date);
+            }
+            for (short high : mHighs) {
+                out.writeShort(high);
+            }
+            for (short low : mLows) {
+                out.writeShort(low);
+            }
+            for (short weatherId : mWeatherIds) {
+                out.writeShort(weatherId);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw.
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the payload is truncated or of a version we don't know
+     */
+    public static ForecastSnapshot decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown forecast format " + version);
+        }
+        ForecastSnapshot snapshot = new ForecastSnapshot(in.readUnsignedByte());
+        for (int i = 0; i < snapshot.mDates.length; i++) {
+            snapshot.mDates[i] = in.readLong();
+        }
+        for (int i = 0; i < snapshot.mHighs.length; i++) {
+            snapshot.mHighs[i] = in.readShort();
+        }
+        for (int i = 0; i < snapshot.mLows.length; i++) {
+            snapshot.mLows[i] = in.readShort();
+        }
+        for (int i = 0; i < snapshot.mWeatherIds.length; i++) {
+            snapshot.mWeatherIds[i] = in.readShort();
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.shared;
+
+/**
+ * Which kind of weather each OpenWeatherMap condition id is, for the phone and the watch.
+ *
+ * Every id from 0 to {@link #MAX_ID} has a slot in one array, so a lookup is a bounds check and
+ * an index rather than a walk down the ranges.  The kinds are what the art is drawn for; each
+ * module keeps its own arrays, indexed by kind, of the resources it draws them with, since
+ * resource ids differ between the two.  What both share, the art pack name and the Muzei image,
+ * is kept here.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+    public static final int MAX_ID = 999;
+
+    // Kinds of weather, used as indexes into the per-kind arrays
+    public static final int NONE = 0;
+    public static final int STORM = 1;
+    public static final int LIGHT_RAIN = 2;
+    public static final int RAIN = 3;
+    public static final int SNOW = 4;
+    public static final int FOG = 5;
+    public static final int CLEAR = 6;
+    public static final int LIGHT_CLOUDS = 7;
+    public static final int CLOUDS = 8;
+    // Drawn as a storm, but with its own photo
+    public static final int TORNADO = 9;
+    public static final int KIND_COUNT = 10;
+
+    // The name each kind's art has in an art pack, formatted into the pack's URL
+    private static final String[] ART_NAMES = new String[KIND_COUNT];
+    private static final String[] IMAGE_URLS = new String[KIND_COUNT];
+    private static final byte[] KINDS = new byte[MAX_ID + 1];
+
+    static {
+        ART_NAMES[STORM] = "storm";
+        ART_NAMES[LIGHT_RAIN] = "light_rain";
+        ART_NAMES[RAIN] = "rain";
+        ART_NAMES[SNOW] = "snow";
+        ART_NAMES[FOG] = "fog";
+        ART_NAMES[CLEAR] = "clear";
+        ART_NAMES[LIGHT_CLOUDS] = "light_clouds";
+        ART_NAMES[CLOUDS] = "clouds";
+        ART_NAMES[TORNADO] = "storm";
+
+        IMAGE_URLS[STORM] = "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        IMAGE_URLS[LIGHT_RAIN] = "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        IMAGE_URLS[RAIN] = "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        IMAGE_URLS[SNOW] = "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        IMAGE_URLS[FOG] = "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        IMAGE_URLS[CLEAR] = "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        IMAGE_URLS[LIGHT_CLOUDS] = "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        IMAGE_URLS[CLOUDS] = "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        IMAGE_URLS[TORNADO] = "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+        setKind(200, 232, STORM);
+        setKind(300, 321, LIGHT_RAIN);
+        setKind(500, 504, RAIN);
+        setKind(511, 511, SNOW);
+        setKind(520, 531, RAIN);
+        setKind(600, 622, SNOW);
+        // 761, dust, has always been drawn as fog; only 781 is a tornado.
+        setKind(701, 761, FOG);
+        setKind(781, 781, TORNADO);
+        setKind(800, 800, CLEAR);
+        setKind(801, 801, LIGHT_CLOUDS);
+        setKind(802, 804, CLOUDS);
+    }
+
+    private static void setKind(int firstId, int lastId, int kind) {
+        for (int id = firstId; id <= lastId; id++) {
+            KINDS[id] = (byte) kind;
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the kind of weather, or {@link #NONE} if we have no art for the id
+     */
+    public static int getKind(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_ID ? KINDS[weatherId] : NONE;
+    }
+
+    /**
+     * @return the name of the id's art in an art pack, or null if we have no art for the id
+     */
+    public static String getArtName(int weatherId) {
+        return ART_NAMES[getKind(weatherId)];
+    }
+
+    /**
+     * @return a URL to a photo of the id's weather, or null if we have none
+     */
+    public static String getImageUrl(int weatherId) {
+        return IMAGE_URLS[getKind(weatherId)];
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.shared;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TestForecastSnapshot extends TestCase {
+
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int DAYS = 14;
+
+    private static ForecastSnapshot createForecast() {
+        ForecastSnapshot forecast = new ForecastSnapshot(DAYS);
+        for (int i = 0; i < DAYS; i++) {
+            forecast.setDay(i, TEST_DATE + i * DAY_IN_MILLIS, 20.37 + i, 10.05 - i, 800 + (i % 5));
+        }
+        return forecast;
+    }
+
+    // Written by hand, byte by byte, so a change to the layout shows up here.
+    private static byte[] encode(int version, long firstDate, short[] highs, short[] lows,
+            short[] weatherIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(version);
+        out.writeByte(highs.length);
+        for (int i = 0; i < highs.length; i++) {
+            out.writeLong(firstDate + i * DAY_IN_MILLIS);
+        }
+        for (short high : highs) {
+            out.writeShort(high);
+        }
+        for (short low : lows) {
+            out.writeShort(low);
+        }
+        for (short weatherId : weatherIds) {
+            out.writeShort(weatherId);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] threeDays() throws IOException {
+        return encode(ForecastSnapshot.FORMAT_VERSION, TEST_DATE,
+                new short[] { 251, 230, -15 },
+                new short[] { 160, 121, -102 },
+                new short[] { 800, 501, 601 });
+    }
+
+    public void testRoundTrip() throws IOException {
+        ForecastSnapshot decoded = ForecastSnapshot.decode(createForecast().encode());
+        assertEquals(DAYS, decoded.getDayCount());
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(TEST_DATE + i * DAY_IN_MILLIS, decoded.getDate(i));
+            // Temperatures keep a tenth of a degree
+            assertEquals(20.4 + i, decoded.getHigh(i), 0.001);
+            assertEquals(10.1 - i, decoded.getLow(i), 0.001);
+            assertEquals(800 + (i % 5), decoded.getWeatherId(i));
+        }
+    }
+
+    public void testNegativeTemperatures() throws IOException {
+        ForecastSnapshot forecast = new ForecastSnapshot(1);
+        forecast.setDay(0, TEST_DATE, -3.96, -41.2, 600);
+        ForecastSnapshot decoded = ForecastSnapshot.decode(forecast.encode());
+        assertEquals(-4.0, decoded.getHigh(0), 0.001);
+        assertEquals(-41.2, decoded.getLow(0), 0.001);
+    }
+
+    public void testLayout() throws IOException {
+        ForecastSnapshot forecast = new ForecastSnapshot(3);
+        forecast.setDay(0, TEST_DATE, 25.1, 16.0, 800);
+        forecast.setDay(1, TEST_DATE + DAY_IN_MILLIS, 23.0, 12.1, 501);
+        forecast.setDay(2, TEST_DATE + 2 * DAY_IN_MILLIS, -1.5, -10.2, 601);
+        assertTrue("Error: the encoding doesn't match the documented layout",
+                Arrays.equals(threeDays(), forecast.encode()));
+
+        ForecastSnapshot decoded = ForecastSnapshot.decode(threeDays());
+        assertEquals(3, decoded.getDayCount());
+        assertEquals(TEST_DATE + DAY_IN_MILLIS, decoded.getDate(1));
+        assertEquals(25.1, decoded.getHigh(0), 0.001);
+        assertEquals(-10.2, decoded.getLow(2), 0.001);
+        assertEquals(501, decoded.getWeatherId(1));
+    }
+
+    public void testUnknownVersionIsRejected() throws IOException {
+        byte[] payload = encode(ForecastSnapshot.FORMAT_VERSION + 1, TEST_DATE,
+                new short[] { 0 }, new short[] { 0 }, new short[] { 800 });
+        try {
+            ForecastSnapshot.decode(payload);
+            fail("Error: decoded a payload of an unknown version");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testTruncatedPayloadIsRejected() throws IOException {
+        byte[] payload = threeDays();
+        byte[] truncated = new byte[payload.length - 1];
+        System.arraycopy(payload, 0, truncated, 0, truncated.length);
+        try {
+            ForecastSnapshot.decode(truncated);
+            fail("Error: decoded a truncated payload");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testIndexOfDay() throws IOException {
+        ForecastSnapshot forecast = ForecastSnapshot.decode(threeDays());
+        assertEquals(-1, forecast.indexOfDay(TEST_DATE - 1));
+        assertEquals(0, forecast.indexOfDay(TEST_DATE));
+        assertEquals(0, forecast.indexOfDay(TEST_DATE + DAY_IN_MILLIS - 1));
+        assertEquals(1, forecast.indexOfDay(TEST_DATE + DAY_IN_MILLIS));
+        assertEquals(2, forecast.indexOfDay(TEST_DATE + 3 * DAY_IN_MILLIS - 1));
+        // Past the last day the forecast says nothing
+        assertEquals(-1, forecast.indexOfDay(TEST_DATE + 3 * DAY_IN_MILLIS));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+public class TestDataItemFilter extends AndroidTestCase {
+    private static final String WEATHER_PATH = "/weatherData";
+    private static final String OTHER_PATH = "/other";
+
+    public void testIdenticalPayloadIsSuppressed() {
+        DataItemFilter filter = new DataItemFilter();
+        assertTrue(filter.accept(WEATHER_PATH, new byte[] { 1, 2, 3 }));
+        // A different array with the same contents, as a fresh fetch would return
+        assertFalse(filter.accept(WEATHER_PATH, new byte[] { 1, 2, 3 }));
+        assertEquals(1, filter.getAppliedCount());
+        assertEquals(1, filter.getSuppressedCount());
+    }
+
+    public void testChangedPayloadIsAccepted() {
+        DataItemFilter filter = new DataItemFilter();
+        assertTrue(filter.accept(WEATHER_PATH, new byte[] { 1, 2, 3 }));
+        assertTrue(filter.accept(WEATHER_PATH, new byte[] { 1, 2, 4 }));
+        // Going back to an earlier payload is a change too
+        assertTrue(filter.accept(WEATHER_PATH, new byte[] { 1, 2, 3 }));
+        assertEquals(3, filter.getAppliedCount());
+        assertEquals(0, filter.getSuppressedCount());
+    }
+
+    public void testPathsAreIndependent() {
+        DataItemFilter filter = new DataItemFilter();
+        assertTrue(filter.accept(WEATHER_PATH, new byte[] { 1 }));
+        assertTrue(filter.accept(OTHER_PATH, new byte[] { 1 }));
+        assertFalse(filter.accept(OTHER_PATH, new byte[] { 1 }));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+
+public class TestDigitAtlas extends AndroidTestCase {
+
+    private static final char[] TIME = "10:09".toCharArray();
+
+    private Paint mPaint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPaint = new Paint();
+        mPaint.setColor(Color.WHITE);
+        mPaint.setTextSize(40);
+        mPaint.setAntiAlias(true);
+    }
+
+    public void testMatches() {
+        DigitAtlas atlas = new DigitAtlas(mPaint);
+        assertTrue(atlas.matches(mPaint));
+        mPaint.setAntiAlias(false);
+        assertFalse(atlas.matches(mPaint));
+        atlas.recycle();
+    }
+
+    // The blitted time has to cover the same area as the text it replaces.
+    public void testDrawsWhereDrawTextWould() {
+        Rect expected = new Rect();
+        mPaint.getTextBounds(TIME, 0, TIME.length, expected);
+        expected.offset(20, 60);
+
+        DigitAtlas atlas = new DigitAtlas(mPaint);
+        Bitmap target = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        atlas.draw(new Canvas(target), TIME, 0, TIME.length, 20, 60);
+
+        Rect drawn = inkBounds(target);
+        assertTrue("Error: nothing was drawn", !drawn.isEmpty());
+        // Within a pixel of drawText, allowing for rounding of the glyph cells.
+        assertEquals(expected.left, drawn.left, 1);
+        assertEquals(expected.top, drawn.top, 1);
+        assertEquals(expected.right, drawn.right, 1);
+        assertEquals(expected.bottom, drawn.bottom, 1);
+
+        target.recycle();
+        atlas.recycle();
+    }
+
+    public void testLowBitAtlasHasNoPartialPixels() {
+        mPaint.setAntiAlias(false);
+        DigitAtlas atlas = new DigitAtlas(mPaint);
+        Bitmap target = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        atlas.draw(new Canvas(target), TIME, 0, TIME.length, 20, 60);
+        for (int y = 0; y < target.getHeight(); y++) {
+            for (int x = 0; x < target.getWidth(); x++) {
+                int alpha = Color.alpha(target.getPixel(x, y));
+                assertTrue("Error: partial alpha " + alpha + " at " + x + "," + y,
+                        alpha == 0 || alpha == 255);
+            }
+        }
+        target.recycle();
+        atlas.recycle();
+    }
+
+    private static Rect inkBounds(Bitmap bitmap) {
+        Rect bounds = new Rect(bitmap.getWidth(), bitmap.getHeight(), 0, 0);
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            for (int x = 0; x < bitmap.getWidth(); x++) {
+                if (Color.alpha(bitmap.getPixel(x, y)) != 0) {
+                    bounds.union(x, y, x + 1, y + 1);
+                }
+            }
+        }
+        return bounds;
+    }
+}
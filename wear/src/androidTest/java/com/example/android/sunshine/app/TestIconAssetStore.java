@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+import java.nio.ByteBuffer;
+
+public class TestIconAssetStore extends AndroidTestCase {
+
+    // What the phone's WearIconRenderer sends: the size, then the pixels.
+    private static byte[] toRaw(Bitmap bitmap) {
+        ByteBuffer buffer = ByteBuffer.allocate(IconAssetStore.HEADER_BYTES
+                + bitmap.getRowBytes() * bitmap.getHeight());
+        buffer.putInt(bitmap.getWidth());
+        buffer.putInt(bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(buffer);
+        return buffer.array();
+    }
+
+    public void testRawPixelsRoundTrip() {
+        Bitmap original = Bitmap.createBitmap(6, 4, Bitmap.Config.ARGB_8888);
+        original.eraseColor(Color.TRANSPARENT);
+        original.setPixel(0, 0, Color.RED);
+        original.setPixel(5, 3, Color.WHITE);
+
+        Bitmap icon = IconAssetStore.toBitmap(toRaw(original));
+        assertNotNull(icon);
+        assertEquals(6, icon.getWidth());
+        assertEquals(4, icon.getHeight());
+        assertEquals(Color.RED, icon.getPixel(0, 0));
+        assertEquals(Color.WHITE, icon.getPixel(5, 3));
+        assertEquals(Color.TRANSPARENT, icon.getPixel(2, 2));
+    }
+
+    public void testTruncatedPixelsAreRejected() {
+        byte[] raw = toRaw(Bitmap.createBitmap(6, 4, Bitmap.Config.ARGB_8888));
+        byte[] truncated = new byte[raw.length - 4];
+        System.arraycopy(raw, 0, truncated, 0, truncated.length);
+        assertNull(IconAssetStore.toBitmap(truncated));
+    }
+
+    public void testTooShortForAHeaderIsRejected() {
+        assertNull(IconAssetStore.toBitmap(new byte[] { 0, 0, 0, 6 }));
+    }
+}
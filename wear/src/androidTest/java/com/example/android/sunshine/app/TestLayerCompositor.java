@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+
+public class TestLayerCompositor extends AndroidTestCase {
+
+    static class CountingLayer implements LayerCompositor.Layer {
+        final int mColor;
+        int mDraws;
+        int mLastMode = -1;
+
+        CountingLayer(int color) {
+            mColor = color;
+        }
+
+        @Override
+        public void draw(Canvas canvas, Rect bounds, int mode) {
+            mDraws++;
+            mLastMode = mode;
+            canvas.drawColor(mColor);
+        }
+    }
+
+    private CountingLayer mBottom;
+    private CountingLayer mTop;
+    private LayerCompositor mCompositor;
+    private Bitmap mTarget;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBottom = new CountingLayer(Color.RED);
+        mTop = new CountingLayer(Color.BLUE);
+        mCompositor = new LayerCompositor(mBottom, mTop);
+        mTarget = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mTarget);
+        mBounds = new Rect(0, 0, 100, 100);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCompositor.release();
+        mTarget.recycle();
+        super.tearDown();
+    }
+
+    public void testLayersAreDrawnOnceAndComposited() {
+        for (int i = 0; i < 10; i++) {
+            mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_INTERACTIVE);
+        }
+        assertEquals(1, mBottom.mDraws);
+        assertEquals(1, mTop.mDraws);
+        assertEquals(1, mCompositor.getRenderCount());
+        // Top layer drawn last
+        assertEquals(Color.BLUE, mTarget.getPixel(50, 50));
+    }
+
+    public void testInvalidateRedrawsOnlyTheShowingMode() {
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_INTERACTIVE);
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_AMBIENT);
+        assertEquals(2, mCompositor.getRenderCount());
+
+        mCompositor.invalidate(1);
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_AMBIENT);
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_AMBIENT);
+        assertEquals(3, mCompositor.getRenderCount());
+        assertEquals(LayerCompositor.MODE_AMBIENT, mTop.mLastMode);
+
+        // The interactive bitmap is brought up to date when it is next shown.
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_INTERACTIVE);
+        assertEquals(4, mCompositor.getRenderCount());
+        assertEquals(LayerCompositor.MODE_INTERACTIVE, mTop.mLastMode);
+    }
+
+    public void testModesKeepTheirOwnBitmaps() {
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_INTERACTIVE);
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_LOW_BIT_AMBIENT);
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_INTERACTIVE);
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_LOW_BIT_AMBIENT);
+        assertEquals(2, mCompositor.getRenderCount());
+    }
+
+    public void testResizeRedraws() {
+        mCompositor.draw(mCanvas, mBounds, LayerCompositor.MODE_INTERACTIVE);
+        mCompositor.draw(mCanvas, new Rect(0, 0, 80, 80), LayerCompositor.MODE_INTERACTIVE);
+        assertEquals(2, mCompositor.getRenderCount());
+    }
+}
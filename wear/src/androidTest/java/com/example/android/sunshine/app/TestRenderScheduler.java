@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+public class TestRenderScheduler extends AndroidTestCase {
+
+    // 12:00:30.500 UTC on December 20th, 2014: halfway through a minute
+    private static final long TEST_TIME = 1419076830500L;
+
+    static class FakeClock implements RenderScheduler.Clock {
+        long mNow = TEST_TIME;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    // Holds the one pending wake-up, as a Handler with a single message type would.
+    static class FakeHost implements RenderScheduler.Host {
+        static final long NONE = -1;
+
+        long mWakeUpAt = NONE;
+        int mFrames;
+        final FakeClock mClock;
+
+        FakeHost(FakeClock clock) {
+            mClock = clock;
+        }
+
+        @Override
+        public void scheduleWakeUp(long delayMillis) {
+            mWakeUpAt = mClock.mNow + delayMillis;
+        }
+
+        @Override
+        public void cancelWakeUp() {
+            mWakeUpAt = NONE;
+        }
+
+        @Override
+        public void drawFrame() {
+            mFrames++;
+        }
+    }
+
+    private FakeClock mClock;
+    private FakeHost mHost;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClock = new FakeClock();
+        mHost = new FakeHost(mClock);
+    }
+
+    /**
+     * Moves the clock forward, delivering every wake-up that falls due on the way.
+     */
+    private void advance(RenderScheduler scheduler, long millis) {
+        long end = mClock.mNow + millis;
+        while (mHost.mWakeUpAt != FakeHost.NONE && mHost.mWakeUpAt <= end) {
+            mClock.mNow = mHost.mWakeUpAt;
+            mHost.mWakeUpAt = FakeHost.NONE;
+            scheduler.onWakeUp();
+        }
+        mClock.mNow = end;
+    }
+
+    public void testWakesOncePerMinute() {
+        RenderScheduler scheduler = new RenderScheduler(mClock, mHost,
+                RenderScheduler.INTERVAL_MINUTE);
+        scheduler.setVisible(true);
+        // The first frame straight away, then one on each of the next ten minutes
+        advance(scheduler, 10 * RenderScheduler.INTERVAL_MINUTE);
+        assertEquals(11, scheduler.getWakeUpCount());
+        assertEquals(11, mHost.mFrames);
+    }
+
+    public void testWakesOncePerSecond() {
+        RenderScheduler scheduler = new RenderScheduler(mClock, mHost,
+                RenderScheduler.INTERVAL_SECOND);
+        scheduler.setVisible(true);
+        advance(scheduler, RenderScheduler.INTERVAL_MINUTE);
+        assertEquals(61, scheduler.getWakeUpCount());
+    }
+
+    public void testFramesAreAlignedToTheBoundary() {
+        RenderScheduler scheduler = new RenderScheduler(mClock, mHost,
+                RenderScheduler.INTERVAL_MINUTE);
+        scheduler.setVisible(true);
+        advance(scheduler, 0);
+        // 12:00:30.5 to 12:01:00
+        assertEquals(TEST_TIME + 29500, mHost.mWakeUpAt);
+        advance(scheduler, 29500);
+        assertEquals(TEST_TIME + 29500 + RenderScheduler.INTERVAL_MINUTE, mHost.mWakeUpAt);
+    }
+
+    public void testNothingWhileInvisible() {
+        RenderScheduler scheduler = new RenderScheduler(mClock, mHost,
+                RenderScheduler.INTERVAL_SECOND);
+        scheduler.setVisible(true);
+        advance(scheduler, 0);
+        scheduler.setVisible(false);
+        assertEquals(FakeHost.NONE, mHost.mWakeUpAt);
+        scheduler.requestFrame();
+        advance(scheduler, 10 * RenderScheduler.INTERVAL_MINUTE);
+        assertEquals(1, scheduler.getWakeUpCount());
+
+        // Becoming visible again draws what was asked for while hidden.
+        scheduler.setVisible(true);
+        advance(scheduler, 0);
+        assertEquals(2, mHost.mFrames);
+    }
+
+    public void testNoTicksInAmbient() {
+        RenderScheduler scheduler = new RenderScheduler(mClock, mHost,
+                RenderScheduler.INTERVAL_SECOND);
+        scheduler.setVisible(true);
+        advance(scheduler, 0);
+        scheduler.setAmbient(true);
+        advance(scheduler, 10 * RenderScheduler.INTERVAL_MINUTE);
+        assertEquals(1, scheduler.getWakeUpCount());
+
+        // Frames asked for in ambient, like the system's time tick, are still drawn.
+        scheduler.requestFrame();
+        advance(scheduler, RenderScheduler.INTERVAL_MINUTE);
+        assertEquals(2, scheduler.getWakeUpCount());
+
+        scheduler.setAmbient(false);
+        advance(scheduler, 0);
+        assertEquals(3, mHost.mFrames);
+        assertTrue(mHost.mWakeUpAt != FakeHost.NONE);
+    }
+
+    public void testRequestsAreCollapsed() {
+        RenderScheduler scheduler = new RenderScheduler(mClock, mHost,
+                RenderScheduler.INTERVAL_MINUTE);
+        scheduler.setVisible(true);
+        advance(scheduler, 0);
+        for (int i = 0; i < 5; i++) {
+            scheduler.requestFrame();
+        }
+        advance(scheduler, 0);
+        assertEquals(2, mHost.mFrames);
+        assertEquals(4, scheduler.getCollapsedCount());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+
+public class TestTextLayoutCache extends AndroidTestCase {
+
+    private TextLayoutCache mCache;
+    private Paint mPaint;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new TextLayoutCache();
+        mPaint = new Paint();
+        mPaint.setTextSize(20);
+        mBounds = new Rect();
+    }
+
+    public void testBoundsMatchPaint() {
+        Rect expected = new Rect();
+        mPaint.getTextBounds("Sat Dec 20", 0, 10, expected);
+        mCache.getTextBounds(mPaint, "Sat Dec 20", mBounds);
+        assertEquals(expected, mBounds);
+    }
+
+    public void testSameTextAndConfigIsMeasuredOnce() {
+        mCache.getTextBounds(mPaint, "25 16", mBounds);
+        mCache.getTextBounds(mPaint, "25 16", mBounds);
+        mCache.getTextBounds(mPaint, "25 16", mBounds);
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(2, mCache.getHitCount());
+    }
+
+    public void testTextSizeIsPartOfTheKey() {
+        mCache.getTextBounds(mPaint, "25 16", mBounds);
+        int smallWidth = mBounds.width();
+
+        // As when onApplyWindowInsets picks the round text size
+        mPaint.setTextSize(40);
+        mCache.getTextBounds(mPaint, "25 16", mBounds);
+        assertTrue(mBounds.width() > smallWidth);
+        assertEquals(2, mCache.getMissCount());
+
+        // Back to the first size is a lookup
+        mPaint.setTextSize(20);
+        mCache.getTextBounds(mPaint, "25 16", mBounds);
+        assertEquals(smallWidth, mBounds.width());
+        assertEquals(1, mCache.getHitCount());
+    }
+
+    public void testStaysBounded() {
+        for (int i = 0; i <= TextLayoutCache.MAX_STRINGS_PER_CONFIG; i++) {
+            mCache.getTextBounds(mPaint, Integer.toString(i), mBounds);
+        }
+        // The first string was dropped when the config filled up.
+        mCache.getTextBounds(mPaint, "0", mBounds);
+        assertEquals(TextLayoutCache.MAX_STRINGS_PER_CONFIG + 2, mCache.getMissCount());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Measures what a frame of the face costs, in time and in allocations, in every mode the face
+    draws in, with and without weather.  Frames are drawn the way onDraw draws them, into a
+    software canvas the size of a watch screen, both within a minute and on a new minute.
+
+    The numbers are written to the log under this class' tag, one line per case, so runs can be
+    compared.  The allocation figures are also gated: a frame within a minute must not allocate
+    at all, and a new minute may only allocate what measuring the new time takes.
+ */
+public class TestWatchFaceBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceBenchmark.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 30;
+    private static final int BENCHMARK_FRAMES = 300;
+
+    // At most, per frame on a new minute; see TestWatchFaceRenderer.testTextIsOnlyRebuiltOnChange
+    private static final long MAX_NEW_MINUTE_ALLOCATIONS = 2;
+
+    // 10:09:00 UTC, December 20th, 2014
+    private static final long TEST_TIME = 1419070140000L;
+    private static final long FRAME_MILLIS = 16;
+    private static final long MINUTE_MILLIS = 60000;
+
+    private static final int MODE_INTERACTIVE = 0;
+    private static final int MODE_AMBIENT = 1;
+    private static final int MODE_LOW_BIT_AMBIENT = 2;
+    private static final String[] MODE_NAMES = {"interactive", "ambient", "low-bit ambient"};
+
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setTextSizes(40, 20);
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testInteractiveWithWeather() {
+        benchmark(MODE_INTERACTIVE, true);
+    }
+
+    public void testInteractiveWithoutWeather() {
+        benchmark(MODE_INTERACTIVE, false);
+    }
+
+    public void testAmbientWithWeather() {
+        benchmark(MODE_AMBIENT, true);
+    }
+
+    public void testAmbientWithoutWeather() {
+        benchmark(MODE_AMBIENT, false);
+    }
+
+    public void testLowBitAmbientWithWeather() {
+        benchmark(MODE_LOW_BIT_AMBIENT, true);
+    }
+
+    public void testLowBitAmbientWithoutWeather() {
+        benchmark(MODE_LOW_BIT_AMBIENT, false);
+    }
+
+    private void benchmark(int mode, boolean withWeather) {
+        mRenderer.setAmbient(mode != MODE_INTERACTIVE);
+        mRenderer.setLowBitAmbient(mode == MODE_LOW_BIT_AMBIENT);
+        if (withWeather) {
+            mRenderer.setWeather("25\u00B0", "16\u00B0", 800);
+        } else {
+            mRenderer.setWeather(null, null, 0);
+        }
+
+        // The same minute, as an interactive face redrawing for any other reason does
+        long[] sameMinute = measure(TEST_TIME, FRAME_MILLIS);
+        // A new minute every frame, as the face draws on each tick
+        long[] newMinute = measure(TEST_TIME + BENCHMARK_FRAMES * FRAME_MILLIS + MINUTE_MILLIS,
+                MINUTE_MILLIS);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%s, %s weather: same minute %d us/%d objects/%d bytes per frame, " +
+                        "new minute %d us/%d objects/%d bytes per frame",
+                MODE_NAMES[mode], withWeather ? "with" : "without",
+                sameMinute[0] / 1000, sameMinute[1], sameMinute[2],
+                newMinute[0] / 1000, newMinute[1], newMinute[2]));
+
+        assertEquals("Error: " + MODE_NAMES[mode] + " frames allocated within a minute",
+                0, sameMinute[1]);
+        assertTrue("Error: " + MODE_NAMES[mode] + " frames allocated " + newMinute[1] +
+                " objects on a new minute", newMinute[1] <= MAX_NEW_MINUTE_ALLOCATIONS);
+    }
+
+    /*
+        Draws warm-up frames, then the benchmark frames, starting at startMillis and stepping
+        by stepMillis.  Returns the average time, in nanoseconds, and the average number of
+        objects and bytes allocated by one benchmark frame.
+     */
+    @SuppressWarnings("deprecation")
+    private long[] measure(long startMillis, long stepMillis) {
+        long now = startMillis;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += stepMillis;
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += stepMillis;
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        long objects = Debug.getThreadAllocCount();
+        long bytes = Debug.getThreadAllocSize();
+
+        return new long[] {elapsed / BENCHMARK_FRAMES, objects / BENCHMARK_FRAMES,
+                bytes / BENCHMARK_FRAMES};
+    }
+}
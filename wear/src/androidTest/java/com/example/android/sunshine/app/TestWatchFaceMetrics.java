@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class TestWatchFaceMetrics extends AndroidTestCase {
+
+    private WatchFaceMetrics mMetrics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMetrics = new WatchFaceMetrics();
+    }
+
+    public void testPercentiles() {
+        assertEquals(0, mMetrics.getFramePercentileNanos(50));
+        // 1..100 ms, in reverse so the ring buffer isn't already sorted
+        for (int i = 100; i >= 1; i--) {
+            mMetrics.recordFrame(i * 1000000L);
+        }
+        assertEquals(100, mMetrics.getFrameCount());
+        assertEquals(51000000L, mMetrics.getFramePercentileNanos(50));
+        assertEquals(96000000L, mMetrics.getFramePercentileNanos(95));
+        assertEquals(100000000L, mMetrics.getFramePercentileNanos(99));
+    }
+
+    public void testRingBufferKeepsLatestFrames() {
+        for (int i = 0; i < WatchFaceMetrics.FRAME_HISTORY; i++) {
+            mMetrics.recordFrame(1000);
+        }
+        for (int i = 0; i < WatchFaceMetrics.FRAME_HISTORY; i++) {
+            mMetrics.recordFrame(5000);
+        }
+        assertEquals(2 * WatchFaceMetrics.FRAME_HISTORY, mMetrics.getFrameCount());
+        assertEquals(5000, mMetrics.getFramePercentileNanos(0));
+    }
+
+    public void testRedrawCauses() {
+        mMetrics.countRedraw(WatchFaceMetrics.CAUSE_TIME_TICK);
+        mMetrics.countRedraw(WatchFaceMetrics.CAUSE_TIME_TICK);
+        mMetrics.countRedraw(WatchFaceMetrics.CAUSE_DATA_CHANGED);
+        assertEquals(2, mMetrics.getRedrawCount(WatchFaceMetrics.CAUSE_TIME_TICK));
+        assertEquals(1, mMetrics.getRedrawCount(WatchFaceMetrics.CAUSE_DATA_CHANGED));
+        assertEquals(0, mMetrics.getRedrawCount(WatchFaceMetrics.CAUSE_AMBIENT_CHANGED));
+    }
+
+    public void testModeTime() {
+        mMetrics.setAmbient(false, 1000);
+        mMetrics.setAmbient(true, 4000);
+        mMetrics.setAmbient(false, 10000);
+        assertEquals(6000, mMetrics.getAmbientMillis(12000));
+        assertEquals(5000, mMetrics.getInteractiveMillis(12000));
+    }
+
+    public void testDump() {
+        mMetrics.recordFrame(2000000);
+        mMetrics.countRedraw(WatchFaceMetrics.CAUSE_AMBIENT_CHANGED);
+        StringWriter out = new StringWriter();
+        mMetrics.dump(new PrintWriter(out), 0);
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("p50 2.00 ms"));
+        assertTrue(dump, dump.contains("ambient changed 1"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.TimeZone;
+
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final int SIZE = 320;
+    private static final int FRAMES = 60;
+
+    // 10:09:00 UTC, December 20th, 2014
+    private static final long TEST_TIME = 1419070140000L;
+
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setTextSizes(40, 20);
+        mRenderer.setWeather("25\u00B0", "16\u00B0", 800);
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    /**
+     * Draws FRAMES frames, starting at startMillis and stepping by stepMillis, and returns how
+     * many objects the test thread allocated while doing so.
+     */
+    private int countAllocations(long startMillis, long stepMillis) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, startMillis + i * stepMillis);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    public void testSteadyStateFramesDoNotAllocate() {
+        // The first frame builds the text and scales the icon.
+        mRenderer.draw(mCanvas, mBounds, TEST_TIME);
+
+        // Interactive mode redraws within the same minute, e.g. while animating.
+        assertEquals("Error: onDraw allocated within a minute",
+                0, countAllocations(TEST_TIME + 1, 16));
+    }
+
+    public void testAmbientFramesDoNotAllocate() {
+        mRenderer.setAmbient(true);
+        mRenderer.draw(mCanvas, mBounds, TEST_TIME);
+        assertEquals("Error: onDraw allocated in ambient mode",
+                0, countAllocations(TEST_TIME + 1, 16));
+    }
+
+    public void testTextIsOnlyRebuiltOnChange() {
+        mRenderer.draw(mCanvas, mBounds, TEST_TIME);
+
+        // A new minute every frame may rebuild the time, but only the time: a few objects at
+        // most for measuring it, never one per character or a formatter.
+        int layerRenders = mRenderer.getLayerRenderCount();
+        int perMinute = countAllocations(TEST_TIME + 60000, 60000) / FRAMES;
+        assertTrue("Error: " + perMinute + " allocations per new minute", perMinute <= 2);
+        assertEquals("Error: a new minute redrew the pre-rendered layers",
+                layerRenders, mRenderer.getLayerRenderCount());
+
+        // New weather with the same values changes nothing.
+        mRenderer.setWeather("25\u00B0", "16\u00B0", 800);
+        assertEquals(0, countAllocations(TEST_TIME + FRAMES * 60000 + 1, 16));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+public class TestWeatherIconCache extends AndroidTestCase {
+
+    private static final int CLEAR = 800;
+    private static final int RAIN = 501;
+
+    private WeatherIconCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new WeatherIconCache(mContext.getResources());
+    }
+
+    public void testPrepareLoadsBothVariants() {
+        mCache.prepare(CLEAR, 50, 50);
+        assertEquals(2, mCache.size());
+
+        Bitmap interactive = mCache.get(CLEAR, false, 50, 50);
+        Bitmap ambient = mCache.get(CLEAR, true, 50, 50);
+        assertNotNull(interactive);
+        assertNotNull(ambient);
+        assertNotSame(interactive, ambient);
+        assertEquals(50, interactive.getWidth());
+        assertEquals(50, interactive.getHeight());
+
+        // Nothing new is decoded once prepared.
+        assertSame(interactive, mCache.get(CLEAR, false, 50, 50));
+        assertEquals(2, mCache.size());
+    }
+
+    public void testNewConditionEvictsOldIcons() {
+        mCache.prepare(CLEAR, 50, 50);
+        mCache.prepare(RAIN, 50, 50);
+        assertEquals(2, mCache.size());
+        assertNotNull(mCache.get(RAIN, true, 50, 50));
+    }
+
+    public void testSizeIsPartOfTheKey() {
+        mCache.prepare(CLEAR, 50, 50);
+        Bitmap large = mCache.get(CLEAR, false, 80, 80);
+        assertEquals(80, large.getWidth());
+        assertNotSame(large, mCache.get(CLEAR, false, 50, 50));
+    }
+
+    public void testPushedIconsReplaceDecodedOnes() {
+        mCache.prepare(CLEAR, 50, 50);
+        Bitmap pushed = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+        mCache.setPushed(CLEAR, pushed);
+        assertSame(pushed, mCache.get(CLEAR, false, 50, 50));
+        // Ambient is always our own outline art
+        assertNotNull(mCache.get(CLEAR, true, 50, 50));
+        assertNotSame(pushed, mCache.get(CLEAR, true, 50, 50));
+    }
+
+    public void testPushedIconsOfAnotherSizeAreIgnored() {
+        Bitmap pushed = Bitmap.createBitmap(40, 40, Bitmap.Config.ARGB_8888);
+        mCache.setPushed(CLEAR, pushed);
+        mCache.prepare(CLEAR, 50, 50);
+        Bitmap icon = mCache.get(CLEAR, false, 50, 50);
+        assertNotSame(pushed, icon);
+        assertEquals(50, icon.getWidth());
+    }
+
+    public void testUnknownConditionHasNoIcon() {
+        mCache.prepare(0, 50, 50);
+        assertNull(mCache.get(0, false, 50, 50));
+        assertEquals(0, mCache.size());
+    }
+}
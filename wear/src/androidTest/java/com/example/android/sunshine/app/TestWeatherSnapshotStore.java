@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+public class TestWeatherSnapshotStore extends AndroidTestCase {
+    private static final String LOG_TAG = TestWeatherSnapshotStore.class.getSimpleName();
+
+    private static final long TEST_TIME = 1419070140000L;
+    // Any bytes will do; the store doesn't look inside the forecast.
+    private static final byte[] FORECAST = { 1, 2, 0, 0, 1, 74, 102, -20, 64, 0, 7, 42 };
+
+    private File mDirectory;
+    private WeatherSnapshotStore mStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = mContext.getCacheDir();
+        mStore = new WeatherSnapshotStore(mDirectory);
+        mStore.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mStore.delete();
+        super.tearDown();
+    }
+
+    public void testMissingFileIsEmpty() {
+        assertSame(WeatherSnapshotStore.EMPTY, mStore.read());
+    }
+
+    public void testRoundTrip() {
+        mStore.write(new WeatherSnapshotStore.Snapshot(FORECAST, false, TEST_TIME));
+
+        WeatherSnapshotStore.Snapshot snapshot = new WeatherSnapshotStore(mDirectory).read();
+        assertTrue(Arrays.equals(FORECAST, snapshot.mForecast));
+        assertFalse(snapshot.mMetric);
+        assertEquals(TEST_TIME, snapshot.mTimestamp);
+    }
+
+    public void testCorruptFileIsEmpty() throws Exception {
+        FileOutputStream out = new FileOutputStream(
+                new File(mDirectory, WeatherSnapshotStore.FILE_NAME));
+        // The right version, then a forecast length far past the end of the file
+        out.write(new byte[] { 0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0x7f, 0, 0, 0 });
+        out.close();
+        assertSame(WeatherSnapshotStore.EMPTY, mStore.read());
+    }
+
+    // onCreate reads the snapshot on the main thread, so it has to stay well under a frame.
+    public void testReadIsFast() {
+        mStore.write(new WeatherSnapshotStore.Snapshot(FORECAST, true, TEST_TIME));
+        final int reads = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            mStore.read();
+        }
+        long averageMicros = (System.nanoTime() - start) / reads / 1000;
+        Log.i(LOG_TAG, "Snapshot read: " + averageMicros + " us");
+        assertTrue("Error: reading the snapshot took " + averageMicros + " us",
+                averageMicros < 2000);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Remembers the last payload applied for each data item path, so the face can skip items it
+ * has already shown.
+ *
+ * The same item reaches the watch more than once: the initial fetch on every connect returns
+ * whatever the listener already delivered, and the phone may put an unchanged item again.
+ * Only the main thread uses this, so it isn't synchronized.
+ */
+class DataItemFilter {
+    private final HashMap<String, byte[]> mLastPayloads = new HashMap<String, byte[]>();
+
+    private int mAppliedCount;
+    private int mSuppressedCount;
+
+    /**
+     * @return true if the payload differs from the last one accepted for the path, in which
+     *         case it becomes the new last one
+     */
+    boolean accept(String path, byte[] payload) {
+        if (Arrays.equals(mLastPayloads.get(path), payload)) {
+            mSuppressedCount++;
+            return false;
+        }
+        mLastPayloads.put(path, payload);
+        mAppliedCount++;
+        return true;
+    }
+
+    /**
+     * Forgets the last payload for the path, so that the next one is accepted whatever it holds.
+     */
+    void forget(String path) {
+        mLastPayloads.remove(path);
+    }
+
+    int getAppliedCount() {
+        return mAppliedCount;
+    }
+
+    int getSuppressedCount() {
+        return mSuppressedCount;
+    }
+}
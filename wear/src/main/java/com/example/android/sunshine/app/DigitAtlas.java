@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * The glyphs the time is made of, 0-9 and ':', rasterized once into a bitmap so the time can
+ * be drawn by copying them instead of shaping and rasterizing text on every frame.
+ *
+ * An atlas is built for one paint: its text size, typeface, color and anti-aliasing are baked
+ * in.  Each glyph sits in its own cell with some padding around it, so glyphs that reach past
+ * their advance width aren't clipped.
+ */
+class DigitAtlas {
+    static final String GLYPHS = "0123456789:";
+    private static final int COLON = 10;
+
+    private final Bitmap mBitmap;
+    private final float mTextSize;
+    private final boolean mAntiAlias;
+
+    private final float[] mAdvances = new float[GLYPHS.length()];
+    private final int mCellWidth;
+    private final int mPadding;
+    // Distance from the top of a cell to the glyph's baseline
+    private final int mBaseline;
+
+    private final Rect mSource = new Rect();
+    private final RectF mDestination = new RectF();
+
+    DigitAtlas(Paint paint) {
+        mTextSize = paint.getTextSize();
+        mAntiAlias = paint.isAntiAlias();
+
+        Paint glyphPaint = new Paint(paint);
+        glyphPaint.setTextAlign(Paint.Align.LEFT);
+        glyphPaint.getTextWidths(GLYPHS, mAdvances);
+        float maxAdvance = 0;
+        for (float advance : mAdvances) {
+            maxAdvance = Math.max(maxAdvance, advance);
+        }
+
+        Paint.FontMetricsInt metrics = glyphPaint.getFontMetricsInt();
+        mPadding = (int) Math.ceil(mTextSize / 4);
+        mCellWidth = (int) Math.ceil(maxAdvance) + 2 * mPadding;
+        mBaseline = mPadding - metrics.top;
+        int cellHeight = mBaseline + metrics.bottom + mPadding;
+
+        mBitmap = Bitmap.createBitmap(mCellWidth * GLYPHS.length(), cellHeight,
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            canvas.drawText(GLYPHS, i, i + 1, i * mCellWidth + mPadding, mBaseline, glyphPaint);
+        }
+    }
+
+    private static int glyphIndex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c == ':' ? COLON : -1;
+    }
+
+    /**
+     * @return true if this atlas was built for a paint with these settings
+     */
+    boolean matches(Paint paint) {
+        return mTextSize == paint.getTextSize() && mAntiAlias == paint.isAntiAlias();
+    }
+
+    /**
+     * Draws the text with its origin at (x, y), as Canvas.drawText would with a left-aligned
+     * paint.  Every character must be one of {@link #GLYPHS}.
+     */
+    void draw(Canvas canvas, char[] chars, int start, int count, float x, float y) {
+        float penX = x;
+        float top = y - mBaseline;
+        for (int i = start; i < start + count; i++) {
+            int glyph = glyphIndex(chars[i]);
+            mSource.set(glyph * mCellWidth, 0, (glyph + 1) * mCellWidth, mBitmap.getHeight());
+            mDestination.set(penX - mPadding, top, penX - mPadding + mCellWidth,
+                    top + mBitmap.getHeight());
+            canvas.drawBitmap(mBitmap, mSource, mDestination, null);
+            penX += mAdvances[glyph];
+        }
+    }
+
+    void recycle() {
+        mBitmap.recycle();
+    }
+}
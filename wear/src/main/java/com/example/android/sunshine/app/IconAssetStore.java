@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Icons the phone rendered for the face, kept by the digest of the Asset they came in.
+ *
+ * An icon is raw ARGB_8888 pixels behind its width and height, so turning it into a bitmap is
+ * a copy rather than a decode.  The phone only sends an icon when the condition changes, and
+ * the same few conditions keep coming back, so icons are kept on disk as well as in memory and
+ * an asset we have seen before is never transferred again.
+ *
+ * {@link #load} blocks on the data layer and the disk, so it must not run on the main thread.
+ */
+class IconAssetStore {
+    private static final String LOG_TAG = "IconAssetStore";
+
+    static final String DIRECTORY = "icons";
+    static final int HEADER_BYTES = 8;
+
+    // Two variants of each condition; there are fewer than twenty conditions.
+    static final int MAX_FILES = 32;
+    private static final int MEMORY_ICONS = 4;
+
+    private static final long FETCH_TIMEOUT_SECONDS = 30;
+
+    private final File mDirectory;
+    private final LruCache<String, Bitmap> mMemory = new LruCache<String, Bitmap>(MEMORY_ICONS);
+
+    IconAssetStore(File filesDirectory) {
+        mDirectory = new File(filesDirectory, DIRECTORY);
+    }
+
+    /**
+     * @return the icon in the asset, from memory, disk or the data layer in that order, or null
+     *         if it can't be had
+     */
+    Bitmap load(GoogleApiClient googleApiClient, Asset asset) {
+        String digest = asset.getDigest();
+        Bitmap icon = mMemory.get(digest);
+        if (icon != null) {
+            return icon;
+        }
+        File file = new File(mDirectory, digest);
+        byte[] raw = read(file);
+        if (raw == null) {
+            raw = fetch(googleApiClient, asset);
+            if (raw == null) {
+                return null;
+            }
+            write(file, raw);
+        }
+        icon = toBitmap(raw);
+        if (icon != null) {
+            mMemory.put(digest, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * @return the icon, or null if the bytes aren't one
+     */
+    static Bitmap toBitmap(byte[] raw) {
+        if (raw.length < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        if (width <= 0 || height <= 0 || buffer.remaining() != width * height * 4) {
+            Log.w(LOG_TAG, "Not an icon: " + width + "x" + height + ", " + raw.length + " bytes");
+            return null;
+        }
+        Bitmap icon = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        icon.copyPixelsFromBuffer(buffer);
+        return icon;
+    }
+
+    private static byte[] fetch(GoogleApiClient googleApiClient, Asset asset) {
+        DataApi.GetFdForAssetResult result = Wearable.DataApi.getFdForAsset(googleApiClient,
+                asset).await(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try {
+            if (!result.getStatus().isSuccess()) {
+                Log.w(LOG_TAG, "Couldn't fetch icon " + asset.getDigest() + ": " +
+                        result.getStatus());
+                return null;
+            }
+            InputStream in = result.getInputStream();
+            return in != null ? readFully(in) : null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't fetch icon " + asset.getDigest(), e);
+            return null;
+        } finally {
+            result.release();
+        }
+    }
+
+    private static byte[] read(File file) {
+        try {
+            return readFully(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read " + file, e);
+            return null;
+        }
+    }
+
+    private void write(File file, byte[] raw) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        prune();
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(raw);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't save " + file, e);
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes room for one more file by deleting the oldest ones.
+     */
+    private void prune() {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length < MAX_FILES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i <= files.length - MAX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
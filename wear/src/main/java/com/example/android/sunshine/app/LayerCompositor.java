@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+
+/**
+ * Keeps the parts of the face that change at most once a minute pre-rendered in an offscreen
+ * bitmap, one per display mode, so a frame is a single blit plus whatever changes faster.
+ *
+ * The content is made of {@link Layer}s, drawn bottom to top.  Whoever owns a layer calls
+ * {@link #invalidate(int)} when one of its inputs changes.  A mode's bitmap is redrawn the
+ * next time that mode is shown, and only if a layer changed since it was last drawn; the
+ * bitmaps of modes that aren't showing are left alone until they are needed.
+ */
+class LayerCompositor {
+
+    static final int MODE_INTERACTIVE = 0;
+    static final int MODE_AMBIENT = 1;
+    static final int MODE_LOW_BIT_AMBIENT = 2;
+    private static final int MODE_COUNT = 3;
+
+    interface Layer {
+        /**
+         * Draws the layer for the given mode onto a transparent bitmap the size of the face.
+         */
+        void draw(Canvas canvas, Rect bounds, int mode);
+    }
+
+    private final Layer[] mLayers;
+    private final int[] mLayerVersions;
+    private final int[][] mDrawnVersions = new int[MODE_COUNT][];
+    private final Bitmap[] mBitmaps = new Bitmap[MODE_COUNT];
+
+    private final Canvas mLayerCanvas = new Canvas();
+    private final Rect mLayerBounds = new Rect();
+    private int mRenderCount;
+
+    LayerCompositor(Layer... layers) {
+        mLayers = layers;
+        mLayerVersions = new int[layers.length];
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            mDrawnVersions[mode] = new int[layers.length];
+        }
+    }
+
+    /**
+     * Marks the layer at the given index as changed in every mode.
+     */
+    void invalidate(int layer) {
+        mLayerVersions[layer]++;
+    }
+
+    void invalidateAll() {
+        for (int i = 0; i < mLayerVersions.length; i++) {
+            mLayerVersions[i]++;
+        }
+    }
+
+    /**
+     * Draws the layers for the mode onto the canvas, redrawing the mode's bitmap first if any
+     * layer changed or the face changed size.
+     */
+    void draw(Canvas canvas, Rect bounds, int mode) {
+        Bitmap bitmap = mBitmaps[mode];
+        int width = bounds.width();
+        int height = bounds.height();
+        boolean stale = false;
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mBitmaps[mode] = bitmap;
+            stale = true;
+        }
+
+        int[] drawnVersions = mDrawnVersions[mode];
+        for (int i = 0; i < mLayers.length && !stale; i++) {
+            stale = drawnVersions[i] != mLayerVersions[i];
+        }
+
+        if (stale) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            mLayerCanvas.setBitmap(bitmap);
+            mLayerBounds.set(0, 0, width, height);
+            for (int i = 0; i < mLayers.length; i++) {
+                mLayers[i].draw(mLayerCanvas, mLayerBounds, mode);
+                drawnVersions[i] = mLayerVersions[i];
+            }
+            mLayerCanvas.setBitmap(null);
+            mRenderCount++;
+        }
+
+        canvas.drawBitmap(bitmap, bounds.left, bounds.top, null);
+    }
+
+    /**
+     * @return how many times a mode's bitmap has been redrawn
+     */
+    int getRenderCount() {
+        return mRenderCount;
+    }
+
+    /**
+     * Frees the bitmaps.  They are drawn again the next time they are needed.
+     */
+    void release() {
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            if (mBitmaps[mode] != null) {
+                mBitmaps[mode].recycle();
+                mBitmaps[mode] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * Decides when the face is redrawn in interactive mode.
+ *
+ * While the face is visible and interactive, the scheduler wakes up on every boundary of its
+ * interval, a minute or a second, and draws a frame, so the time changes exactly when it
+ * should and the CPU wakes no more often than the face changes.  It stops as soon as the face
+ * is hidden or goes ambient, where the system's onTimeTick takes over.  Redraws asked for with
+ * {@link #requestFrame} are collapsed: however many come in before the next frame, one frame
+ * is drawn.
+ *
+ * Time comes from a {@link Clock} and wake-ups go through a {@link Host}, so tests can drive it
+ * without a Handler.
+ */
+class RenderScheduler {
+    static final long INTERVAL_SECOND = 1000;
+    static final long INTERVAL_MINUTE = 60 * INTERVAL_SECOND;
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * What the scheduler drives; the engine backs it with a Handler and invalidate().
+     */
+    interface Host {
+        /**
+         * Calls {@link #onWakeUp} after the delay, replacing any wake-up already scheduled.
+         */
+        void scheduleWakeUp(long delayMillis);
+
+        void cancelWakeUp();
+
+        void drawFrame();
+    }
+
+    private final Clock mClock;
+    private final Host mHost;
+    private final long mIntervalMillis;
+
+    private boolean mVisible;
+    private boolean mAmbient;
+    private boolean mFramePending;
+
+    private long mWakeUpCount;
+    private long mFrameCount;
+    private long mCollapsedCount;
+
+    RenderScheduler(Clock clock, Host host, long intervalMillis) {
+        mClock = clock;
+        mHost = host;
+        mIntervalMillis = intervalMillis;
+    }
+
+    private boolean isTicking() {
+        return mVisible && !mAmbient;
+    }
+
+    void setVisible(boolean visible) {
+        if (mVisible == visible) {
+            return;
+        }
+        mVisible = visible;
+        if (visible) {
+            // Whatever changed while we were hidden, and the time, needs drawing.
+            mFramePending = false;
+            requestFrame();
+        } else {
+            mFramePending = false;
+            mHost.cancelWakeUp();
+        }
+    }
+
+    void setAmbient(boolean ambient) {
+        if (mAmbient == ambient) {
+            return;
+        }
+        mAmbient = ambient;
+        if (!ambient) {
+            // Back to ticking, from a fresh frame.
+            requestFrame();
+        } else if (!mFramePending) {
+            mHost.cancelWakeUp();
+        }
+    }
+
+    /**
+     * Asks for a frame as soon as possible.  Requests made before it is drawn share it.
+     */
+    void requestFrame() {
+        if (!mVisible) {
+            // setVisible(true) draws a frame anyway.
+            return;
+        }
+        if (mFramePending) {
+            mCollapsedCount++;
+            return;
+        }
+        mFramePending = true;
+        mHost.scheduleWakeUp(0);
+    }
+
+    /**
+     * Called by the host when a scheduled wake-up is due.
+     */
+    void onWakeUp() {
+        if (!mVisible || (!mFramePending && !isTicking())) {
+            // Stale; the face stopped before the host cancelled it.
+            return;
+        }
+        mWakeUpCount++;
+        mFramePending = false;
+        mFrameCount++;
+        mHost.drawFrame();
+        if (isTicking()) {
+            mHost.scheduleWakeUp(getDelayToNextBoundary());
+        }
+    }
+
+    /**
+     * @return how long until the next multiple of the interval, never 0 so that a wake-up
+     *         landing exactly on a boundary waits for the next one
+     */
+    long getDelayToNextBoundary() {
+        return mIntervalMillis - mClock.currentTimeMillis() % mIntervalMillis;
+    }
+
+    long getWakeUpCount() {
+        return mWakeUpCount;
+    }
+
+    long getFrameCount() {
+        return mFrameCount;
+    }
+
+    long getCollapsedCount() {
+        return mCollapsedCount;
+    }
+}
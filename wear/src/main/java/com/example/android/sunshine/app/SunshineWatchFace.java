@@ -20,39 +20,42 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
 
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.shared.ForecastSnapshot;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.TimeZone;
 
 /**
@@ -60,76 +63,59 @@ import java.util.TimeZone;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
     private final String LOG_TAG = "WatchFaceService";
 
-
-    private Rect r = new Rect();
-
-    private void drawCenter(Canvas canvas, Paint paint, String text, float yOffset, float xOffset) {
-            int cHeight = canvas.getClipBounds().height();
-            int cWidth = canvas.getClipBounds().width();
-
-            paint.setTextAlign(Paint.Align.LEFT);
-            paint.getTextBounds(text, 0, text.length(), r);
-
-            float x = cWidth / 2f - r.width() / 2f - r.left;
-            float y = cHeight / 2f + r.height() / 2f - r.bottom;
-            canvas.drawText(text, x + xOffset, y + yOffset, paint);
-        }
-
-    private void drawWeatherIconCenter(Canvas canvas, Bitmap bitmap, float yOffset, float xOffset){
-        float centerX = canvas.getClipBounds().width()/2f;
-        float centerY = canvas.getClipBounds().height()/2f;
-        canvas.drawBitmap(bitmap, centerX + xOffset, centerY + yOffset, null);
-    }
-
-    private float getTextHeight(Paint paint, String text) {
-        Rect rect = new Rect();
-        paint.getTextBounds(text, 0, text.length(), rect);
-        return rect.height();
-    }
+    // Shared by every engine the service creates, so dumpsys shows the face's whole history.
+    private final WatchFaceMetrics mMetrics = new WatchFaceMetrics();
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    /**
+     * adb shell dumpsys activity service com.example.android.sunshine.app/.SunshineWatchFace
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        mMetrics.dump(writer, SystemClock.elapsedRealtime());
+    }
+
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+        private final String FORECAST_KEY = getString(R.string.FORECAST_KEY);
+        private final String METRIC_KEY = getString(R.string.METRIC_KEY);
+        private final String WEATHER_DATA_PATH = getString(R.string.WEATHER_DATA_PATH);
+        private final String ICON_PATH = getString(R.string.ICON_PATH);
+        private final String ICON_SIZE_PATH = getString(R.string.ICON_SIZE_PATH);
         private final String WEATHER_ID_KEY = getString(R.string.WEATHER_ID_KEY);
-        private final String HIGH_TEMP_KEY = getString(R.string.HIGH_TEMP_KEY);
-        private final String LOW_TEMP_KEY = getString(R.string.LOW_TEMP_KEY);
+        private final String ICON_WIDTH_KEY = getString(R.string.ICON_WIDTH_KEY);
+        private final String ICON_HEIGHT_KEY = getString(R.string.ICON_HEIGHT_KEY);
+        private final String ICON_INTERACTIVE_KEY = getString(R.string.ICON_INTERACTIVE_KEY);
         boolean mRegisteredTimeZoneReceiver = false;
 
         GoogleApiClient mGoogleApiClient;
 
-        Paint mBackgroundPaint;
-        Paint mTextPaint;
-        Paint mHighTempPaint;
-        String mHighTemp;
-        String mLowTemp;
-        int mWeatherId;
-        Bitmap weatherIconBitmap;
+        WatchFaceRenderer mRenderer;
 
-        //add date
-        Paint mDatePaint;
-        Calendar mCalendar;
-        Date mDate;
-        SimpleDateFormat mDayOfWeekFormat;
+        WeatherSnapshotStore mSnapshotStore;
+        WeatherSnapshotStore.Snapshot mSnapshot;
+        // Decoded from mSnapshot, or null if it holds nothing we can show
+        ForecastSnapshot mForecast;
+        // The day of mForecast the face shows, or -1 for none
+        int mForecastDay = -1;
+        final DataItemFilter mDataItemFilter = new DataItemFilter();
+        IconAssetStore mIconAssetStore;
+        boolean mIconSizePublished;
 
         boolean mAmbient;
-        Time mTime;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                invalidate(WatchFaceMetrics.CAUSE_TIME_ZONE_CHANGED);
             }
         };
-        float mYOffset;
-        float mLineHeight;
-
         boolean weatherChanged = false;
 
         /**
@@ -138,6 +124,36 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
+        private static final int MSG_WAKE_UP = 1;
+
+        final Handler mWakeUpHandler = new Handler(new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                mScheduler.onWakeUp();
+                return true;
+            }
+        });
+
+        // The face shows hours and minutes, so it only needs a frame on each minute.
+        final RenderScheduler mScheduler = new RenderScheduler(RenderScheduler.SYSTEM_CLOCK,
+                new RenderScheduler.Host() {
+                    @Override
+                    public void scheduleWakeUp(long delayMillis) {
+                        mWakeUpHandler.removeMessages(MSG_WAKE_UP);
+                        mWakeUpHandler.sendEmptyMessageDelayed(MSG_WAKE_UP, delayMillis);
+                    }
+
+                    @Override
+                    public void cancelWakeUp() {
+                        mWakeUpHandler.removeMessages(MSG_WAKE_UP);
+                    }
+
+                    @Override
+                    public void drawFrame() {
+                        invalidate();
+                    }
+                }, RenderScheduler.INTERVAL_MINUTE);
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
@@ -148,29 +164,15 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = SunshineWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mLineHeight = resources.getDimension(R.dimen.line_height);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.primary));
-
-            mTextPaint = new Paint();
-            mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            mDatePaint = new Paint();
-            mDatePaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            mHighTempPaint = new Paint();
-            mHighTempPaint = createTextPaint(resources.getColor(R.color.digital_text));
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this.getResources());
+            mMetrics.setAmbient(false, SystemClock.elapsedRealtime());
 
-            mTime = new Time();
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
-
-            //default for missing weather temps
-            mHighTemp = resources.getString(R.string.temp_none);
-            mLowTemp = resources.getString(R.string.temp_none);;
+            // Show the last forecast we had straight away; the phone may take a while to answer.
+            mSnapshotStore = new WeatherSnapshotStore(getFilesDir());
+            mSnapshot = mSnapshotStore.read();
+            mForecast = decodeForecast(mSnapshot.mForecast);
+            showForecast(System.currentTimeMillis());
+            mIconAssetStore = new IconAssetStore(getFilesDir());
 
             mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
                     .addApi(Wearable.API)
@@ -183,28 +185,22 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDestroy() {
+            mWakeUpHandler.removeMessages(MSG_WAKE_UP);
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
+            mScheduler.setVisible(visible);
 
             if (visible) {
                 mGoogleApiClient.connect();
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                mRenderer.setTimeZone(TimeZone.getDefault());
 
             } else {
                 unregisterReceiver();
@@ -236,27 +232,39 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
 
-            // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-            float dateTextSize = resources.getDimension(isRound ? R.dimen.date_square_text_size : R.dimen.date_circle_text_size);
-            mTextPaint.setTextSize(textSize);
-            mDatePaint.setTextSize(dateTextSize);
-            mHighTempPaint.setTextSize(dateTextSize);
+            // Text sizes have alternate values for round watches.  The renderer lays the text
+            // out once here, rather than measuring it while drawing.
+            mRenderer.setRound(insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(mLowBitAmbient);
+        }
+
+        /**
+         * Asks the scheduler for a frame, counting why.  Requests made before the frame is drawn
+         * share it.
+         */
+        private void invalidate(int cause) {
+            mMetrics.countRedraw(cause);
+            mScheduler.requestFrame();
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            // At midnight the face moves on to the next day of the forecast.
+            if (mForecast != null
+                    && mForecast.indexOfDay(System.currentTimeMillis()) != mForecastDay) {
+                showForecast(System.currentTimeMillis());
+            }
+            // In interactive mode the scheduler already draws on every minute.
+            if (mAmbient) {
+                invalidate(WatchFaceMetrics.CAUSE_TIME_TICK);
+            }
         }
 
         @Override
@@ -264,81 +272,211 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                    mDatePaint.setAntiAlias(!inAmbientMode);
-                    mHighTempPaint.setAntiAlias(!inAmbientMode);
-                }
-                invalidate();
+                mRenderer.setAmbient(inAmbientMode);
+                mMetrics.setAmbient(inAmbientMode, SystemClock.elapsedRealtime());
+                mScheduler.setAmbient(inAmbientMode);
+                invalidate(WatchFaceMetrics.CAUSE_AMBIENT_CHANGED);
             }
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            // Nothing in here may allocate; see WatchFaceRenderer.
+            long start = System.nanoTime();
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
+            mMetrics.recordFrame(System.nanoTime() - start);
+        }
+
+        @Override
+        public void onDataChanged(DataEventBuffer dataEvents) {
+            Log.d(LOG_TAG, "onDataChanged(): " + dataEvents);
+
+            // A burst can carry several versions of an item; only the newest of each matters.
+            DataItem newestWeather = null;
+            DataItem newestIcon = null;
+            for (DataEvent event : dataEvents) {
+                if (event.getType() != DataEvent.TYPE_CHANGED) {
+                    continue;
+                }
+                DataItem dataItem = event.getDataItem();
+                String path = dataItem.getUri().getPath();
+                if (WEATHER_DATA_PATH.equals(path)) {
+                    newestWeather = dataItem;
+                } else if (ICON_PATH.equals(path)) {
+                    newestIcon = dataItem;
+                }
+            }
+            if (newestWeather != null) {
+                applyWeather(newestWeather);
+            }
+            if (newestIcon != null) {
+                applyIcons(newestIcon);
+            }
+        }
+
+        /**
+         * Shows the forecast in the item, unless it's the same as what's already shown.
+         */
+        private void applyWeather(DataItem dataItem) {
+            if (!mDataItemFilter.accept(WEATHER_DATA_PATH, dataItem.getData())) {
+                Log.d(LOG_TAG, "applyWeather(): unchanged, "
+                        + mDataItemFilter.getSuppressedCount() + " skipped so far");
+                return;
+            }
+            DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+            byte[] payload = dataMap.getByteArray(FORECAST_KEY);
+            ForecastSnapshot forecast = decodeForecast(payload);
+            if (forecast == null) {
+                return;
             }
 
-            Resources resources = SunshineWatchFace.this.getResources();
-            mTime.setToNow();
-            String text = String.format("%d:%02d", mTime.hour, mTime.minute);
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-            mDayOfWeekFormat = new SimpleDateFormat("EEE MMM dd");
-            mDayOfWeekFormat.setCalendar(mCalendar);
-
-            String dateFormatted = mDayOfWeekFormat.format(mDate);
-            float dateOffset = getTextHeight(mDatePaint, dateFormatted);
-            float textOffset = getTextHeight(mTextPaint, text);
-
-            drawCenter(canvas, mTextPaint, text, resources.getInteger(R.integer.time_text_yOffset), resources.getInteger(R.integer.time_text_xOffset));
-            drawCenter(canvas, mDatePaint, dateFormatted, mLineHeight + resources.getInteger(R.integer.date_text_yOffset), resources.getInteger(R.integer.date_text_xOffset));
-
-
-            String tempStr = mHighTemp + " " + mLowTemp;
-            //load icon
-            if (mWeatherId > 0) {
-                int iconResource = Utility.getArtResourceForWeatherCondition(mWeatherId, mAmbient);
-                Log.d(LOG_TAG, "iconResource: " + String.valueOf(iconResource));
-                Drawable weatherIconDrawable = getResources().getDrawable(iconResource, null);
-                Bitmap weatherIcon = ((BitmapDrawable) weatherIconDrawable).getBitmap();
-                weatherIconBitmap = Bitmap.createScaledBitmap(weatherIcon, resources.getInteger(R.integer.weatherIcon_bitmap_height), resources.getInteger(R.integer.weatherIcon_bitmap_width), false);
-                drawWeatherIconCenter(canvas, weatherIconBitmap, (mLineHeight * 3) - resources.getInteger(R.integer.icon_yOffset), resources.getInteger(R.integer.icon_xOffset));
+            mSnapshot = new WeatherSnapshotStore.Snapshot(payload,
+                    dataMap.getBoolean(METRIC_KEY, true), now);
+            mSnapshotStore.save(mSnapshot);
+            mForecast = forecast;
+            showForecast(now);
+
+            weatherChanged = true;
+            invalidate(WatchFaceMetrics.CAUSE_DATA_CHANGED);
+        }
+
+        /**
+         * @return the decoded forecast, or null if there is none or it can't be read
+         */
+        private ForecastSnapshot decodeForecast(byte[] payload) {
+            if (payload == null) {
+                return null;
+            }
+            try {
+                return ForecastSnapshot.decode(payload);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Couldn't read the forecast", e);
+                return null;
             }
-            drawCenter(canvas, mHighTempPaint, tempStr, (mLineHeight * 2) - resources.getInteger(R.integer.temp_text_yOffset), resources.getInteger(R.integer.temp_text_xOffset));
         }
 
-        @Override
-        public void onDataChanged(DataEventBuffer dataEvents) {
-            Log.d("watchfaceService", "onDataChanged(): " + dataEvents);
+        /**
+         * Hands the renderer the day of the forecast that applies at the given time.
+         */
+        private void showForecast(long nowMillis) {
+            mForecastDay = mForecast != null ? mForecast.indexOfDay(nowMillis) : -1;
+            if (mForecastDay == -1) {
+                mRenderer.setWeather(null, null, 0);
+                return;
+            }
+            boolean metric = mSnapshot.mMetric;
+            mRenderer.setWeather(
+                    Utility.formatTemperature(SunshineWatchFace.this,
+                            mForecast.getHigh(mForecastDay), metric),
+                    Utility.formatTemperature(SunshineWatchFace.this,
+                            mForecast.getLow(mForecastDay), metric),
+                    mForecast.getWeatherId(mForecastDay));
+        }
 
-            for (DataEvent event : dataEvents) {
-                if (event.getType() == DataEvent.TYPE_CHANGED) {
+        /**
+         * Loads the icon in the item off the main thread and hands it to the renderer, unless
+         * it is the one already shown or was rendered for another size.
+         */
+        private void applyIcons(DataItem dataItem) {
+            if (!mDataItemFilter.accept(ICON_PATH, dataItem.getData())) {
+                return;
+            }
+            DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+            if (dataMap.getInt(ICON_WIDTH_KEY) != mRenderer.getIconWidth()
+                    || dataMap.getInt(ICON_HEIGHT_KEY) != mRenderer.getIconHeight()) {
+                return;
+            }
+            new IconLoadTask(dataMap.getInt(WEATHER_ID_KEY),
+                    dataMap.getAsset(ICON_INTERACTIVE_KEY)).execute();
+        }
 
-                    DataItem dataItem = event.getDataItem();
-                    DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
-                    DataMap dataMap = dataMapItem.getDataMap();
+        private class IconLoadTask extends AsyncTask<Void, Void, Bitmap> {
+            private final int mWeatherId;
+            private final Asset mInteractive;
 
-                    mHighTemp = dataMap.getString(HIGH_TEMP_KEY);
-                    mLowTemp = dataMap.getString(LOW_TEMP_KEY);
+            IconLoadTask(int weatherId, Asset interactive) {
+                mWeatherId = weatherId;
+                mInteractive = interactive;
+            }
 
-                    mWeatherId = dataMap.getInt(WEATHER_ID_KEY);
+            @Override
+            protected Bitmap doInBackground(Void... params) {
+                return mInteractive != null
+                        ? mIconAssetStore.load(mGoogleApiClient, mInteractive) : null;
+            }
 
-                    weatherChanged = true;
-                    invalidate();
+            @Override
+            protected void onPostExecute(Bitmap icon) {
+                if (icon == null) {
+                    // Most likely disconnected mid-fetch; try again on the next connect.
+                    mDataItemFilter.forget(ICON_PATH);
+                    return;
                 }
+                mRenderer.setPushedIcon(mWeatherId, icon);
+                invalidate(WatchFaceMetrics.CAUSE_DATA_CHANGED);
             }
+        }
+
+        /**
+         * Reads what the phone put at the path while we were disconnected.
+         */
+        private void fetchDataItems(final String path) {
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(path)
+                    .build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, uri)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                if (!dataItems.getStatus().isSuccess()) {
+                                    Log.w(LOG_TAG, "fetchDataItems(): couldn't read " + path
+                                            + ": " + dataItems.getStatus());
+                                    return;
+                                }
+                                DataItem newest = null;
+                                for (DataItem dataItem : dataItems) {
+                                    newest = dataItem;
+                                }
+                                if (newest == null) {
+                                    return;
+                                }
+                                if (WEATHER_DATA_PATH.equals(path)) {
+                                    applyWeather(newest);
+                                } else {
+                                    applyIcons(newest);
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    });
+        }
 
+        /**
+         * Tells the phone the size we draw icons at, so it can render them for us.
+         */
+        private void publishIconSize() {
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(ICON_SIZE_PATH);
+            putDataMapRequest.getDataMap().putInt(ICON_WIDTH_KEY, mRenderer.getIconWidth());
+            putDataMapRequest.getDataMap().putInt(ICON_HEIGHT_KEY, mRenderer.getIconHeight());
+            Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest());
+            mIconSizePublished = true;
         }
 
         @Override
         public void onConnected(Bundle bundle) {
             Log.d(LOG_TAG, "onConnected(): Successfully connected to Google API client");
             Wearable.DataApi.addListener(mGoogleApiClient, this);
+
+            // The listener only hears about changes from now on.
+            fetchDataItems(WEATHER_DATA_PATH);
+            fetchDataItems(ICON_PATH);
+            if (!mIconSizePublished) {
+                publishIconSize();
+            }
         }
 
         @Override
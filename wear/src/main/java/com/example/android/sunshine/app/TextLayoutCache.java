@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Remembers the bounds of text already measured with {@link Paint#getTextBounds}, keyed by the
+ * paint settings that affect them (text size, typeface and horizontal scale) and the string.
+ *
+ * Only a handful of strings are ever on the face at once, so each paint configuration keeps at
+ * most {@link #MAX_STRINGS_PER_CONFIG}, and starts over when that fills up.
+ */
+class TextLayoutCache {
+    static final int MAX_STRINGS_PER_CONFIG = 32;
+
+    private static class Config {
+        final float mTextSize;
+        final Typeface mTypeface;
+        final float mTextScaleX;
+        final HashMap<String, Rect> mBounds = new HashMap<String, Rect>();
+
+        Config(Paint paint) {
+            mTextSize = paint.getTextSize();
+            mTypeface = paint.getTypeface();
+            mTextScaleX = paint.getTextScaleX();
+        }
+
+        boolean matches(Paint paint) {
+            return mTextSize == paint.getTextSize() && mTypeface == paint.getTypeface()
+                    && mTextScaleX == paint.getTextScaleX();
+        }
+    }
+
+    // Linear search: there are as many configs as paints times window shapes, a few at most.
+    private final ArrayList<Config> mConfigs = new ArrayList<Config>();
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * Sets outBounds to the bounds of the text drawn with the paint, measuring it only if this
+     * paint configuration hasn't measured it before.
+     */
+    void getTextBounds(Paint paint, String text, Rect outBounds) {
+        Config config = null;
+        for (int i = 0; i < mConfigs.size(); i++) {
+            if (mConfigs.get(i).matches(paint)) {
+                config = mConfigs.get(i);
+                break;
+            }
+        }
+        if (config == null) {
+            config = new Config(paint);
+            mConfigs.add(config);
+        }
+
+        Rect bounds = config.mBounds.get(text);
+        if (bounds != null) {
+            mHits++;
+        } else {
+            mMisses++;
+            if (config.mBounds.size() >= MAX_STRINGS_PER_CONFIG) {
+                config.mBounds.clear();
+            }
+            bounds = new Rect();
+            paint.getTextBounds(text, 0, text.length(), bounds);
+            config.mBounds.put(text, bounds);
+        }
+        outBounds.set(bounds);
+    }
+
+    int getHitCount() {
+        return mHits;
+    }
+
+    int getMissCount() {
+        return mMisses;
+    }
+}
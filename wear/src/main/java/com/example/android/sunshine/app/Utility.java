@@ -15,8 +15,54 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
+
+import com.example.android.sunshine.app.shared.WeatherConditions;
+
 public class Utility {
 
+    /**
+     * Formats a temperature from the forecast the way the phone does.
+     * @param temperature in degrees Celsius, as the phone sends it
+     * @param isMetric whether the user wants Celsius, as the phone sends it
+     */
+    public static String formatTemperature(Context context, double temperature, boolean isMetric) {
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(context.getString(R.string.format_temperature), temperature)
+                + (isMetric ? " C" : " F");
+    }
+
+    // The art for each kind of weather in WeatherConditions, -1 where we have none
+    private static final int[] ART_RESOURCES = new int[WeatherConditions.KIND_COUNT];
+    private static final int[] AMBIENT_ART_RESOURCES = new int[WeatherConditions.KIND_COUNT];
+
+    static {
+        ART_RESOURCES[WeatherConditions.NONE] = -1;
+        ART_RESOURCES[WeatherConditions.STORM] = R.drawable.art_storm;
+        ART_RESOURCES[WeatherConditions.LIGHT_RAIN] = R.drawable.art_light_rain;
+        ART_RESOURCES[WeatherConditions.RAIN] = R.drawable.art_rain;
+        ART_RESOURCES[WeatherConditions.SNOW] = R.drawable.art_snow;
+        ART_RESOURCES[WeatherConditions.FOG] = R.drawable.art_fog;
+        ART_RESOURCES[WeatherConditions.CLEAR] = R.drawable.art_clear;
+        ART_RESOURCES[WeatherConditions.LIGHT_CLOUDS] = R.drawable.art_light_clouds;
+        ART_RESOURCES[WeatherConditions.CLOUDS] = R.drawable.art_clouds;
+        ART_RESOURCES[WeatherConditions.TORNADO] = R.drawable.art_storm;
+
+        AMBIENT_ART_RESOURCES[WeatherConditions.NONE] = -1;
+        AMBIENT_ART_RESOURCES[WeatherConditions.STORM] = R.drawable.storm_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.LIGHT_RAIN] = R.drawable.light_rain_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.RAIN] = R.drawable.rain_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.SNOW] = R.drawable.snow_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.FOG] = R.drawable.fog_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.CLEAR] = R.drawable.clear_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.LIGHT_CLOUDS] = R.drawable.light_clouds_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.CLOUDS] = R.drawable.clouds_outline;
+        AMBIENT_ART_RESOURCES[WeatherConditions.TORNADO] = R.drawable.storm_outline;
+    }
 
     /**
      * Helper method to provide the art resource id according to the weather condition id returned
@@ -25,31 +71,7 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId, boolean isAmbient) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return isAmbient ? R.drawable.storm_outline : R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return isAmbient ? R.drawable.light_rain_outline : R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return isAmbient ? R.drawable.rain_outline : R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return isAmbient ? R.drawable.snow_outline : R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return isAmbient ? R.drawable.rain_outline : R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return isAmbient ? R.drawable.snow_outline : R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return isAmbient ? R.drawable.fog_outline : R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return isAmbient ? R.drawable.storm_outline : R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return isAmbient ? R.drawable.clear_outline : R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return isAmbient ? R.drawable.light_clouds_outline : R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return isAmbient ? R.drawable.clouds_outline : R.drawable.art_clouds;
-        }
-        return -1;
+        int kind = WeatherConditions.getKind(weatherId);
+        return isAmbient ? AMBIENT_ART_RESOURCES[kind] : ART_RESOURCES[kind];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Cheap counters for the watch face: how long the last frames took to draw, why the face was
+ * redrawn, and how long it spent in ambient and in interactive mode.
+ *
+ * Recording only writes into preallocated arrays, so it can stay on in release builds.  All the
+ * sorting and formatting happens in {@link #dump}, which SunshineWatchFace exposes through
+ * <code>adb shell dumpsys activity service .SunshineWatchFace</code>.  Nothing here depends on
+ * Android, and times are passed in rather than read, so benchmarks and tests can feed it
+ * directly.
+ */
+class WatchFaceMetrics {
+    static final int FRAME_HISTORY = 256;
+
+    static final int CAUSE_TIME_TICK = 0;
+    static final int CAUSE_AMBIENT_CHANGED = 1;
+    static final int CAUSE_DATA_CHANGED = 2;
+    static final int CAUSE_TIME_ZONE_CHANGED = 3;
+    private static final String[] CAUSE_NAMES = {
+            "time tick", "ambient changed", "data changed", "time zone changed"
+    };
+
+    private final long[] mFrameNanos = new long[FRAME_HISTORY];
+    private int mNextFrame;
+    private long mFrameCount;
+
+    private final long[] mRedraws = new long[CAUSE_NAMES.length];
+
+    private boolean mAmbient;
+    private long mModeSinceMillis = -1;
+    private long mAmbientMillis;
+    private long mInteractiveMillis;
+
+    /**
+     * Records how long one onDraw took.
+     */
+    synchronized void recordFrame(long durationNanos) {
+        mFrameNanos[mNextFrame] = durationNanos;
+        mNextFrame = (mNextFrame + 1) % FRAME_HISTORY;
+        mFrameCount++;
+    }
+
+    /**
+     * Records an invalidate() and why it happened, one of the CAUSE_ constants.
+     */
+    synchronized void countRedraw(int cause) {
+        mRedraws[cause]++;
+    }
+
+    /**
+     * Records the mode the face is in from nowMillis on.  Pass the same clock every time,
+     * e.g. SystemClock.elapsedRealtime.
+     */
+    synchronized void setAmbient(boolean ambient, long nowMillis) {
+        accumulateModeTime(nowMillis);
+        mAmbient = ambient;
+    }
+
+    private void accumulateModeTime(long nowMillis) {
+        if (mModeSinceMillis >= 0) {
+            if (mAmbient) {
+                mAmbientMillis += nowMillis - mModeSinceMillis;
+            } else {
+                mInteractiveMillis += nowMillis - mModeSinceMillis;
+            }
+        }
+        mModeSinceMillis = nowMillis;
+    }
+
+    synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    synchronized long getRedrawCount(int cause) {
+        return mRedraws[cause];
+    }
+
+    /**
+     * @return the given percentile, 0 to 100, of the frames in the history, or 0 if there are
+     *         none
+     */
+    synchronized long getFramePercentileNanos(int percentile) {
+        int count = (int) Math.min(mFrameCount, FRAME_HISTORY);
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mFrameNanos, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, count * percentile / 100)];
+    }
+
+    synchronized long getAmbientMillis(long nowMillis) {
+        accumulateModeTime(nowMillis);
+        return mAmbientMillis;
+    }
+
+    synchronized long getInteractiveMillis(long nowMillis) {
+        accumulateModeTime(nowMillis);
+        return mInteractiveMillis;
+    }
+
+    synchronized void dump(PrintWriter writer, long nowMillis) {
+        writer.println(String.format(Locale.US,
+                "Frames: %d drawn, last %d: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms",
+                mFrameCount, Math.min(mFrameCount, FRAME_HISTORY),
+                getFramePercentileNanos(50) / 1e6, getFramePercentileNanos(95) / 1e6,
+                getFramePercentileNanos(99) / 1e6));
+        writer.print("Redraws:");
+        for (int i = 0; i < CAUSE_NAMES.length; i++) {
+            writer.print((i == 0 ? " " : ", ") + CAUSE_NAMES[i] + " " + mRedraws[i]);
+        }
+        writer.println();
+        writer.println(String.format(Locale.US, "Mode: %s, ambient %d s, interactive %d s",
+                mAmbient ? "ambient" : "interactive", getAmbientMillis(nowMillis) / 1000,
+                getInteractiveMillis(nowMillis) / 1000));
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face: the time, the date, today's high and low and the weather icon.
+ *
+ * Everything a frame needs is prepared ahead of time, so {@link #draw} allocates nothing once
+ * the face is showing.  The time text is rebuilt when the minute changes, the date when the day
+ * changes, and the temperatures when new weather arrives.  Icons come from a
+ * {@link WeatherIconCache} that is filled when the weather arrives, with the interactive icon
+ * the phone pushes when it has sent one.
+ *
+ * The background, the date and the weather are pre-rendered by a {@link LayerCompositor}, so
+ * a frame only draws one bitmap and the time, which is copied glyph by glyph out of a
+ * {@link DigitAtlas}.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private final WeatherIconCache mIconCache;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+    private final Paint mTempPaint;
+
+    // Layout, read from resources once instead of on every frame
+    private final float mLineHeight;
+    private final int mTimeXOffset;
+    private final int mTimeYOffset;
+    private final int mDateXOffset;
+    private final int mDateYOffset;
+    private final int mTempXOffset;
+    private final int mTempYOffset;
+    private final int mIconXOffset;
+    private final int mIconYOffset;
+    private final int mIconWidth;
+    private final int mIconHeight;
+    private final float mTimeTextSizeRound;
+    private final float mTimeTextSizeSquare;
+    private final float mDateTextSizeRound;
+    private final float mDateTextSizeSquare;
+
+    // Text bounds are looked up here rather than measured again, and turned into where the text
+    // starts relative to the center of the face whenever the text or its size changes.
+    private final TextLayoutCache mTextLayoutCache = new TextLayoutCache();
+    private final Rect mTextBounds = new Rect();
+    private float mTimeDx;
+    private float mTimeDy;
+    private float mDateDx;
+    private float mDateDy;
+    private float mTempDx;
+    private float mTempDy;
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("EEE MMM dd");
+    private final Date mDate = new Date();
+
+    // "H:mm" or "HH:mm", written in place
+    private final char[] mTimeChars = new char[5];
+    private int mTimeLength;
+    private int mMinuteOfDay = -1;
+    // The time's glyphs for the current text size, anti-aliased and not, so switching to low-bit
+    // ambient needs nothing new.
+    private DigitAtlas mTimeAtlas;
+    private DigitAtlas mTimeAtlasLowBit;
+
+    private String mDateText;
+    private int mDayOfYear = -1;
+    private int mYear = -1;
+
+    private final String mTempNone;
+    private String mHighTemp;
+    private String mLowTemp;
+    private String mTempText;
+
+    private int mWeatherId;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    // Indexes of the layers in mCompositor, bottom to top.  The background, at 0, only changes
+    // with the size of the face, which the compositor tracks itself.
+    private static final int LAYER_DATE = 1;
+    private static final int LAYER_WEATHER = 2;
+    private final LayerCompositor mCompositor;
+
+    WatchFaceRenderer(Resources resources) {
+        mIconCache = new WeatherIconCache(resources);
+        mCompositor = new LayerCompositor(mBackgroundLayer, mDateLayer, mWeatherLayer);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.primary));
+        int textColor = resources.getColor(R.color.digital_text);
+        mTimePaint = createTextPaint(textColor);
+        mDatePaint = createTextPaint(textColor);
+        mTempPaint = createTextPaint(textColor);
+
+        mLineHeight = resources.getDimension(R.dimen.line_height);
+        mTimeXOffset = resources.getInteger(R.integer.time_text_xOffset);
+        mTimeYOffset = resources.getInteger(R.integer.time_text_yOffset);
+        mDateXOffset = resources.getInteger(R.integer.date_text_xOffset);
+        mDateYOffset = resources.getInteger(R.integer.date_text_yOffset);
+        mTempXOffset = resources.getInteger(R.integer.temp_text_xOffset);
+        mTempYOffset = resources.getInteger(R.integer.temp_text_yOffset);
+        mIconXOffset = resources.getInteger(R.integer.icon_xOffset);
+        mIconYOffset = resources.getInteger(R.integer.icon_yOffset);
+        mIconWidth = resources.getInteger(R.integer.weatherIcon_bitmap_width);
+        mIconHeight = resources.getInteger(R.integer.weatherIcon_bitmap_height);
+        mTimeTextSizeRound = resources.getDimension(R.dimen.digital_text_size_round);
+        mTimeTextSizeSquare = resources.getDimension(R.dimen.digital_text_size);
+        mDateTextSizeRound = resources.getDimension(R.dimen.date_square_text_size);
+        mDateTextSizeSquare = resources.getDimension(R.dimen.date_circle_text_size);
+
+        //default for missing weather temps
+        mTempNone = resources.getString(R.string.temp_none);
+        setWeather(null, null, 0);
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        paint.setTextAlign(Paint.Align.LEFT);
+        return paint;
+    }
+
+    /**
+     * Sizes and lays the text out for a round or a square screen, from onApplyWindowInsets.
+     */
+    void setRound(boolean isRound) {
+        setTextSizes(isRound ? mTimeTextSizeRound : mTimeTextSizeSquare,
+                isRound ? mDateTextSizeRound : mDateTextSizeSquare);
+    }
+
+    void setTextSizes(float timeTextSize, float dateTextSize) {
+        mTimePaint.setTextSize(timeTextSize);
+        mDatePaint.setTextSize(dateTextSize);
+        mTempPaint.setTextSize(dateTextSize);
+        layoutTime();
+        layoutDate();
+        layoutTemp();
+        mCompositor.invalidateAll();
+        // Insets are applied more than once with the same shape; the glyphs only need
+        // rasterizing again when their size changes.
+        if (mTimeAtlas == null || !mTimeAtlas.matches(mTimePaint)) {
+            releaseAtlases();
+            buildAtlases();
+        }
+    }
+
+    private void buildAtlases() {
+        mTimePaint.setAntiAlias(true);
+        mTimeAtlas = new DigitAtlas(mTimePaint);
+        mTimePaint.setAntiAlias(false);
+        mTimeAtlasLowBit = new DigitAtlas(mTimePaint);
+        mTimePaint.setAntiAlias(true);
+    }
+
+    private void releaseAtlases() {
+        if (mTimeAtlas != null) {
+            mTimeAtlas.recycle();
+            mTimeAtlasLowBit.recycle();
+            mTimeAtlas = null;
+            mTimeAtlasLowBit = null;
+        }
+    }
+
+    TextLayoutCache getTextLayoutCache() {
+        return mTextLayoutCache;
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+    }
+
+    /**
+     * @param lowBitAmbient whether the display has fewer bits per color in ambient mode, in
+     *                      which case text is drawn without anti-aliasing there
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+    }
+
+    /**
+     * Frees the pre-rendered layers, for when the face isn't showing.
+     */
+    void release() {
+        mCompositor.release();
+        releaseAtlases();
+    }
+
+    int getLayerRenderCount() {
+        return mCompositor.getRenderCount();
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        // The same instant can now be another minute or another day.
+        mMinuteOfDay = -1;
+        mDayOfYear = -1;
+    }
+
+    /**
+     * Draws the phone's interactive icon for the weather id in place of our own, once it matches
+     * the size the face draws icons at; see {@link #getIconWidth} and {@link #getIconHeight}.
+     */
+    void setPushedIcon(int weatherId, Bitmap interactive) {
+        mIconCache.setPushed(weatherId, interactive);
+        if (weatherId == mWeatherId) {
+            mIconCache.prepare(weatherId, mIconWidth, mIconHeight);
+            mCompositor.invalidate(LAYER_WEATHER);
+        }
+    }
+
+    int getIconWidth() {
+        return mIconWidth;
+    }
+
+    int getIconHeight() {
+        return mIconHeight;
+    }
+
+    /**
+     * @param highTemp today's formatted high, or null if we don't have one
+     * @param lowTemp today's formatted low, or null if we don't have one
+     */
+    void setWeather(String highTemp, String lowTemp, int weatherId) {
+        if (highTemp == null) {
+            highTemp = mTempNone;
+        }
+        if (lowTemp == null) {
+            lowTemp = mTempNone;
+        }
+        if (!highTemp.equals(mHighTemp) || !lowTemp.equals(mLowTemp)) {
+            mHighTemp = highTemp;
+            mLowTemp = lowTemp;
+            mTempText = highTemp + " " + lowTemp;
+            layoutTemp();
+            mCompositor.invalidate(LAYER_WEATHER);
+        }
+        if (mWeatherId != weatherId) {
+            mWeatherId = weatherId;
+            // Both variants, so switching to and from ambient doesn't have to decode anything.
+            mIconCache.prepare(weatherId, mIconWidth, mIconHeight);
+            mCompositor.invalidate(LAYER_WEATHER);
+        }
+    }
+
+    // The time changes every minute and is never shown twice in a day, so it isn't worth
+    // caching; it is measured straight from the char[] instead.
+    private void layoutTime() {
+        mTimePaint.getTextBounds(mTimeChars, 0, mTimeLength, mTextBounds);
+        mTimeDx = -mTextBounds.width() / 2f - mTextBounds.left + mTimeXOffset;
+        mTimeDy = mTextBounds.height() / 2f - mTextBounds.bottom + mTimeYOffset;
+    }
+
+    private void layoutDate() {
+        if (mDateText == null) {
+            return;
+        }
+        mTextLayoutCache.getTextBounds(mDatePaint, mDateText, mTextBounds);
+        mDateDx = -mTextBounds.width() / 2f - mTextBounds.left + mDateXOffset;
+        mDateDy = mTextBounds.height() / 2f - mTextBounds.bottom + mLineHeight + mDateYOffset;
+    }
+
+    private void layoutTemp() {
+        mTextLayoutCache.getTextBounds(mTempPaint, mTempText, mTextBounds);
+        mTempDx = -mTextBounds.width() / 2f - mTextBounds.left + mTempXOffset;
+        mTempDy = mTextBounds.height() / 2f - mTextBounds.bottom + (mLineHeight * 2)
+                - mTempYOffset;
+    }
+
+    private void updateTime(long nowMillis) {
+        mCalendar.setTimeInMillis(nowMillis);
+        int hour = mCalendar.get(Calendar.HOUR_OF_DAY);
+        int minute = mCalendar.get(Calendar.MINUTE);
+        int minuteOfDay = hour * 60 + minute;
+        if (minuteOfDay != mMinuteOfDay) {
+            mMinuteOfDay = minuteOfDay;
+            // Same as String.format("%d:%02d", hour, minute)
+            int i = 0;
+            if (hour >= 10) {
+                mTimeChars[i++] = (char) ('0' + hour / 10);
+            }
+            mTimeChars[i++] = (char) ('0' + hour % 10);
+            mTimeChars[i++] = ':';
+            mTimeChars[i++] = (char) ('0' + minute / 10);
+            mTimeChars[i++] = (char) ('0' + minute % 10);
+            mTimeLength = i;
+            layoutTime();
+        }
+
+        int dayOfYear = mCalendar.get(Calendar.DAY_OF_YEAR);
+        int year = mCalendar.get(Calendar.YEAR);
+        if (dayOfYear != mDayOfYear || year != mYear) {
+            mDayOfYear = dayOfYear;
+            mYear = year;
+            mDate.setTime(nowMillis);
+            mDateText = mDateFormat.format(mDate);
+            layoutDate();
+            mCompositor.invalidate(LAYER_DATE);
+        }
+    }
+
+    /**
+     * Draws one frame for the given time: the pre-rendered layers for the current mode, and the
+     * time on top of them.
+     */
+    void draw(Canvas canvas, Rect bounds, long nowMillis) {
+        updateTime(nowMillis);
+
+        int mode = !mAmbient ? LayerCompositor.MODE_INTERACTIVE
+                : mLowBitAmbient ? LayerCompositor.MODE_LOW_BIT_AMBIENT
+                : LayerCompositor.MODE_AMBIENT;
+        mCompositor.draw(canvas, bounds, mode);
+
+        if (mTimeAtlas == null) {
+            // Only after release()
+            buildAtlases();
+        }
+        DigitAtlas atlas = mode == LayerCompositor.MODE_LOW_BIT_AMBIENT
+                ? mTimeAtlasLowBit : mTimeAtlas;
+        atlas.draw(canvas, mTimeChars, 0, mTimeLength, bounds.exactCenterX() + mTimeDx,
+                bounds.exactCenterY() + mTimeDy);
+    }
+
+    private final LayerCompositor.Layer mBackgroundLayer = new LayerCompositor.Layer() {
+        @Override
+        public void draw(Canvas canvas, Rect bounds, int mode) {
+            if (mode == LayerCompositor.MODE_INTERACTIVE) {
+                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            } else {
+                canvas.drawColor(Color.BLACK);
+            }
+        }
+    };
+
+    private final LayerCompositor.Layer mDateLayer = new LayerCompositor.Layer() {
+        @Override
+        public void draw(Canvas canvas, Rect bounds, int mode) {
+            mDatePaint.setAntiAlias(mode != LayerCompositor.MODE_LOW_BIT_AMBIENT);
+            canvas.drawText(mDateText, bounds.exactCenterX() + mDateDx,
+                    bounds.exactCenterY() + mDateDy, mDatePaint);
+        }
+    };
+
+    private final LayerCompositor.Layer mWeatherLayer = new LayerCompositor.Layer() {
+        @Override
+        public void draw(Canvas canvas, Rect bounds, int mode) {
+            Bitmap icon = mIconCache.get(mWeatherId, mode != LayerCompositor.MODE_INTERACTIVE,
+                    mIconWidth, mIconHeight);
+            if (icon != null) {
+                canvas.drawBitmap(icon, bounds.width() / 2f + mIconXOffset,
+                        bounds.height() / 2f + (mLineHeight * 3) - mIconYOffset, null);
+            }
+            mTempPaint.setAntiAlias(mode != LayerCompositor.MODE_LOW_BIT_AMBIENT);
+            canvas.drawText(mTempText, bounds.exactCenterX() + mTempDx,
+                    bounds.exactCenterY() + mTempDy, mTempPaint);
+        }
+    };
+}
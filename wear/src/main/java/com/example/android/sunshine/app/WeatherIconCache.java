@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.util.SparseArray;
+
+/**
+ * Weather icons, decoded and scaled to the size the face draws them at, keyed by weather id,
+ * ambient flag and size.
+ *
+ * The face only ever shows one condition, so the cache only holds that condition's icons: when
+ * {@link #prepare} is called for a new weather id, the icons of the old one are dropped.
+ *
+ * An interactive icon the phone rendered at the right size, see {@link #setPushed}, is used in
+ * place of our own, which saves decoding and scaling the art.  Ambient icons are always our own
+ * outline art.
+ */
+class WeatherIconCache {
+    private final Resources mResources;
+    private final SparseArray<Bitmap> mIcons = new SparseArray<Bitmap>();
+    private int mWeatherId;
+
+    private int mPushedWeatherId;
+    private Bitmap mPushedInteractive;
+
+    WeatherIconCache(Resources resources) {
+        mResources = resources;
+    }
+
+    // Weather ids are below 1000 and icon sizes well below 1024 pixels, so ten bits each.
+    private static int key(int weatherId, boolean ambient, int width, int height) {
+        return (((weatherId & 0x3ff) << 10 | (width & 0x3ff)) << 10 | (height & 0x3ff)) << 1
+                | (ambient ? 1 : 0);
+    }
+
+    /**
+     * Decodes and scales the interactive and the ambient icon for the weather id, forgetting the
+     * icons of any other condition.  Call it when new weather arrives, not while drawing.
+     */
+    void prepare(int weatherId, int width, int height) {
+        if (weatherId != mWeatherId) {
+            mIcons.clear();
+            mWeatherId = weatherId;
+        }
+        load(weatherId, false, width, height);
+        load(weatherId, true, width, height);
+    }
+
+    /**
+     * @return the icon, or null if there is none for the weather id
+     */
+    Bitmap get(int weatherId, boolean ambient, int width, int height) {
+        Bitmap icon = mIcons.get(key(weatherId, ambient, width, height));
+        if (icon == null && weatherId > 0) {
+            // Only if prepare() wasn't called for this size; load it now rather than show nothing.
+            icon = load(weatherId, ambient, width, height);
+        }
+        return icon;
+    }
+
+    /**
+     * Uses the interactive icon the phone rendered for the weather id in place of decoding our
+     * own art, at the size it was rendered at.
+     */
+    void setPushed(int weatherId, Bitmap interactive) {
+        mPushedWeatherId = weatherId;
+        mPushedInteractive = interactive;
+        if (weatherId == mWeatherId) {
+            // Drop what we decoded ourselves, so the pushed icon is picked up.
+            mIcons.clear();
+        }
+    }
+
+    int size() {
+        return mIcons.size();
+    }
+
+    private Bitmap load(int weatherId, boolean ambient, int width, int height) {
+        int key = key(weatherId, ambient, width, height);
+        Bitmap icon = mIcons.get(key);
+        if (icon != null) {
+            return icon;
+        }
+        if (!ambient && weatherId == mPushedWeatherId) {
+            Bitmap pushed = mPushedInteractive;
+            if (pushed != null && pushed.getWidth() == width && pushed.getHeight() == height) {
+                mIcons.put(key, pushed);
+                return pushed;
+            }
+        }
+        int iconResource = Utility.getArtResourceForWeatherCondition(weatherId, ambient);
+        if (iconResource == -1) {
+            return null;
+        }
+        Bitmap art = ((BitmapDrawable) mResources.getDrawable(iconResource, null)).getBitmap();
+        icon = Bitmap.createScaledBitmap(art, width, height, false);
+        mIcons.put(key, icon);
+        return icon;
+    }
+}
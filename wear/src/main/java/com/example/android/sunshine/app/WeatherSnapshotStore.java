@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.AsyncTask;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the last forecast the watch received in a small file, so the face can show it as soon
+ * as it starts instead of waiting for the phone.
+ *
+ * The file holds the {@link com.example.android.sunshine.app.shared.ForecastSnapshot} payload
+ * as the phone sent it, a couple of hundred bytes, and is written through an
+ * {@link AtomicFile}, so a crash mid-write leaves the previous snapshot in place.  Reads are
+ * synchronous and meant for onCreate; writes happen in order on a background thread.
+ */
+class WeatherSnapshotStore {
+    private static final String LOG_TAG = "WeatherSnapshotStore";
+
+    static final String FILE_NAME = "weather_snapshot";
+
+    // Bump when the layout below changes; older files are then ignored.
+    private static final int FORMAT_VERSION = 2;
+    // Far more than any forecast needs; a larger length means the file is damaged.
+    private static final int MAX_FORECAST_BYTES = 64 * 1024;
+
+    /**
+     * The forecast as the phone last published it.
+     */
+    static class Snapshot {
+        // The encoded ForecastSnapshot, or null if we have none
+        final byte[] mForecast;
+        final boolean mMetric;
+        // When the watch received it, in milliseconds since the epoch
+        final long mTimestamp;
+
+        Snapshot(byte[] forecast, boolean metric, long timestamp) {
+            mForecast = forecast;
+            mMetric = metric;
+            mTimestamp = timestamp;
+        }
+    }
+
+    static final Snapshot EMPTY = new Snapshot(null, true, 0);
+
+    private final AtomicFile mFile;
+
+    WeatherSnapshotStore(File directory) {
+        mFile = new AtomicFile(new File(directory, FILE_NAME));
+    }
+
+    /**
+     * @return the last snapshot saved, or {@link #EMPTY} if there is none we can read
+     */
+    Snapshot read() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(mFile.openRead());
+            if (in.readInt() != FORMAT_VERSION) {
+                return EMPTY;
+            }
+            long timestamp = in.readLong();
+            boolean metric = in.readBoolean();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_FORECAST_BYTES) {
+                throw new IOException("Bad forecast length " + length);
+            }
+            byte[] forecast = new byte[length];
+            in.readFully(forecast);
+            return new Snapshot(forecast, metric, timestamp);
+        } catch (FileNotFoundException e) {
+            return EMPTY;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read the weather snapshot", e);
+            return EMPTY;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot, which must hold a forecast, on the calling thread.
+     */
+    void write(Snapshot snapshot) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshot.mTimestamp);
+            out.writeBoolean(snapshot.mMetric);
+            out.writeInt(snapshot.mForecast.length);
+            out.write(snapshot.mForecast);
+            out.flush();
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't save the weather snapshot", e);
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot on a background thread.  Saves run one at a time, in the order they
+     * were asked for, so the last one wins.
+     */
+    void save(final Snapshot snapshot) {
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(snapshot);
+            }
+        });
+    }
+
+    void delete() {
+        mFile.delete();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    The frame benchmark of TestWatchFaceBenchmark, on the JVM, so it runs with the unit tests on
+    any build machine instead of needing a watch.  Robolectric provides the resources and the
+    bitmaps the renderer prepares; the frames themselves are drawn into a RecordingCanvas, which
+    counts what a frame draws instead of rasterizing it.
+
+    Every mode is covered, with and without weather.  Each case prints its time and its
+    allocated bytes per frame, within a minute and on a new minute.  Those are only reported:
+    on the JVM they include what Robolectric's shadows allocate, so the zero-allocation gate
+    stays with the device benchmark.  What is gated here is what doesn't depend on the
+    machine: a frame within a minute must not render any layer again, and a frame must draw
+    nothing but the layers' one bitmap and the time's glyphs.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class TestWatchFaceFrameBenchmark {
+
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 2000;
+    private static final int BENCHMARK_FRAMES = 10000;
+
+    // 10:09:00 UTC, December 20th, 2014
+    private static final long TEST_TIME = 1419070140000L;
+    private static final long FRAME_MILLIS = 16;
+    private static final long MINUTE_MILLIS = 60000;
+    // "10:09", one glyph each
+    private static final int TIME_GLYPHS = 5;
+
+    private static final int MODE_INTERACTIVE = 0;
+    private static final int MODE_AMBIENT = 1;
+    private static final int MODE_LOW_BIT_AMBIENT = 2;
+    private static final String[] MODE_NAMES = {"interactive", "ambient", "low-bit ambient"};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Counts the draw calls a frame makes, without drawing anything or allocating.
+     */
+    static class RecordingCanvas extends Canvas {
+        int mBitmaps;
+        int mOthers;
+
+        void reset() {
+            mBitmaps = 0;
+            mOthers = 0;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            mBitmaps++;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+            mBitmaps++;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+            mBitmaps++;
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            mOthers++;
+        }
+
+        @Override
+        public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+            mOthers++;
+        }
+
+        @Override
+        public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+            mOthers++;
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            mOthers++;
+        }
+
+        @Override
+        public void drawColor(int color) {
+            mOthers++;
+        }
+    }
+
+    private WatchFaceRenderer mRenderer;
+    private RecordingCanvas mCanvas;
+    private Rect mBounds;
+
+    @Before
+    public void setUp() {
+        mRenderer = new WatchFaceRenderer(RuntimeEnvironment.application.getResources());
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setTextSizes(40, 20);
+        mCanvas = new RecordingCanvas();
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        mRenderer.release();
+    }
+
+    @Test
+    public void interactiveWithWeather() {
+        benchmark(MODE_INTERACTIVE, true);
+    }
+
+    @Test
+    public void interactiveWithoutWeather() {
+        benchmark(MODE_INTERACTIVE, false);
+    }
+
+    @Test
+    public void ambientWithWeather() {
+        benchmark(MODE_AMBIENT, true);
+    }
+
+    @Test
+    public void ambientWithoutWeather() {
+        benchmark(MODE_AMBIENT, false);
+    }
+
+    @Test
+    public void lowBitAmbientWithWeather() {
+        benchmark(MODE_LOW_BIT_AMBIENT, true);
+    }
+
+    @Test
+    public void lowBitAmbientWithoutWeather() {
+        benchmark(MODE_LOW_BIT_AMBIENT, false);
+    }
+
+    private void benchmark(int mode, boolean withWeather) {
+        mRenderer.setAmbient(mode != MODE_INTERACTIVE);
+        mRenderer.setLowBitAmbient(mode == MODE_LOW_BIT_AMBIENT);
+        if (withWeather) {
+            mRenderer.setWeather("25\u00B0", "16\u00B0", 800);
+        } else {
+            mRenderer.setWeather(null, null, 0);
+        }
+
+        // The same minute, as an interactive face redrawing for any other reason does
+        long[] sameMinute = measure(TEST_TIME, FRAME_MILLIS);
+        // A new minute every frame, as the face draws on each tick
+        long[] newMinute = measure(TEST_TIME + MINUTE_MILLIS, MINUTE_MILLIS);
+
+        System.out.println(String.format(Locale.US,
+                "%s, %s weather: same minute %d ns/%d bytes per frame, " +
+                        "new minute %d ns/%d bytes per frame",
+                MODE_NAMES[mode], withWeather ? "with" : "without",
+                sameMinute[0], sameMinute[1], newMinute[0], newMinute[1]));
+
+        assertEquals("Error: " + MODE_NAMES[mode] + " frames rendered layers within a minute",
+                0, sameMinute[2]);
+
+        // One frame: the mode's pre-rendered layers in one bitmap, then the time glyph by glyph
+        mCanvas.reset();
+        mRenderer.draw(mCanvas, mBounds, TEST_TIME);
+        assertEquals("Error: unexpected bitmaps in a " + MODE_NAMES[mode] + " frame",
+                1 + TIME_GLYPHS, mCanvas.mBitmaps);
+        assertEquals("Error: a " + MODE_NAMES[mode] + " frame drew straight onto the canvas",
+                0, mCanvas.mOthers);
+    }
+
+    /*
+        Draws warm-up frames, then the benchmark frames, starting at startMillis and stepping
+        by stepMillis.  Returns the average time, in nanoseconds, and the average number of
+        bytes allocated by one benchmark frame, then how many times the benchmark frames
+        rendered a layer.
+     */
+    private long[] measure(long startMillis, long stepMillis) {
+        long now = startMillis;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += stepMillis;
+        }
+
+        long threadId = Thread.currentThread().getId();
+        // What reading the counter costs, so it isn't charged to the frames
+        long overhead = -THREADS.getThreadAllocatedBytes(threadId)
+                + THREADS.getThreadAllocatedBytes(threadId);
+        int rendersBefore = mRenderer.getLayerRenderCount();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += stepMillis;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore - overhead;
+
+        int renders = mRenderer.getLayerRenderCount() - rendersBefore;
+
+        return new long[] {elapsed / BENCHMARK_FRAMES, Math.max(0, allocated) / BENCHMARK_FRAMES,
+                renders};
+    }
+}